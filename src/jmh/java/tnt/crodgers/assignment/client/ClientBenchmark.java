@@ -0,0 +1,63 @@
+package tnt.crodgers.assignment.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link Client#call(String, ResponseHandler, UUID)}'s own overhead (e.g. logging) around an instantly-answered component call
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClientBenchmark {
+
+	private static final String Q_VALUES = "109347263,123456891,117347282,100000001,100000002";
+
+	private static final UUID CALL_ID = UUID.randomUUID();
+
+	private Client client;
+
+	private byte[] responseJson;
+
+	/** Answers every call immediately, vs making an HTTP request */
+	private static class StubbedClient extends Client {
+		private final Mono<byte[]> response;
+
+		StubbedClient(byte[] responseJson) {
+			super("shipments");
+			response = Mono.just(responseJson);
+		}
+
+		@Override
+		protected Mono<byte[]> getCaller(String qValue) {
+			return response;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		StringBuilder json = new StringBuilder("{");
+		for (String id : Q_VALUES.split(",")) {
+			json.append(json.length() == 1 ? "" : ",").append('"').append(id).append("\": [\"box\", \"box\", \"pallet\"]");
+		}
+		responseJson = json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+		client = new StubbedClient(responseJson);
+	}
+
+	@Benchmark
+	public void call(Blackhole blackhole) {
+		client.call(Q_VALUES, (callId, ids, body) -> blackhole.consume(body), CALL_ID);
+	}
+}
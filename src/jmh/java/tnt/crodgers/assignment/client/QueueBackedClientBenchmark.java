@@ -0,0 +1,95 @@
+package tnt.crodgers.assignment.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import reactor.core.Disposable;
+import tnt.crodgers.assignment.service.aggregation.AggregationResponse;
+
+/**
+ * A full batch's lifecycle through a {@link QueueBackedClient}: enqueue, flush, and the JSON fan-out of its response
+ * to the waiting aggregation responses, at various batch sizes and with/without raw passthrough
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueueBackedClientBenchmark {
+
+	@Param({"5", "20", "100"})
+	public int batchSize;
+
+	@Param({"false", "true"})
+	public boolean raw;
+
+	/** Responses waiting on each ID */
+	@Param({"1", "4"})
+	public int fanOut;
+
+	private QueueBackedClient client;
+
+	private CapturingClient capturingClient;
+
+	private Set<String> ids;
+
+	private byte[] responseJson;
+
+	/** Stands in for the component API, capturing the call rather than making it */
+	private static class CapturingClient extends Client {
+		private UUID callId;
+		private String qValues;
+
+		CapturingClient() {
+			super("shipments");
+		}
+
+		@Override
+		public Disposable call(String qValues, ResponseHandler handler, UUID callId) {
+			this.qValues = qValues;
+			this.callId = callId;
+			return null;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		capturingClient = new CapturingClient();
+		client = QueueBackedClient.builder("shipments", capturingClient)
+				.policy(new BatchPolicy(batchSize, 60000, true, 0))
+				.raw(raw)
+				.scheduler(new FlushScheduler("benchmark"))
+				.build();
+
+		ids = new HashSet<>();
+		StringBuilder json = new StringBuilder("{");
+		for (int i = 0; i < batchSize; i++) {
+			String id = Integer.toString(100000000 + i);
+			ids.add(id);
+			json.append(i == 0 ? "" : ",").append('"').append(id).append("\": [\"box\", \"box\", \"pallet\"]");
+		}
+		responseJson = json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public AggregationResponse requestAndRespond() {
+		AggregationResponse response = null;
+		for (int i = 0; i < fanOut; i++) {
+			response = new AggregationResponse(Collections.singletonMap("shipments", ids));
+			client.request(ids, response);
+		}
+		client.handleResponse(capturingClient.callId, capturingClient.qValues, responseJson);
+		return response;
+	}
+}
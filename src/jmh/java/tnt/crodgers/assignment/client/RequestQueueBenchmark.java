@@ -0,0 +1,64 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import tnt.crodgers.assignment.service.aggregation.AggregationResponse;
+
+/**
+ * Contended enqueue/dequeue of a shared {@link RequestQueue}, with requests drawn from a pool of IDs
+ * so that some are coalesced with those already queued or in flight
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestQueueBenchmark {
+
+	@Param({"100", "10000"})
+	public int idPool;
+
+	private RequestQueue queue;
+
+	private String[] ids;
+
+	private AggregationResponse response;
+
+	@Setup
+	public void setup() {
+		queue = new RequestQueue();
+		ids = new String[idPool];
+		for (int i = 0; i < idPool; i++) {
+			ids[i] = Integer.toString(i);
+		}
+		response = new AggregationResponse(Collections.emptyMap());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object enqueueDequeue() {
+		Set<String> request = Collections.singleton(ids[ThreadLocalRandom.current().nextInt(idPool)]);
+		queue.enqueue(request, response);
+		if (!queue.hasReachedThreshold()) {
+			return null;
+		}
+		Map<String, Collection<AggregationResponse>> dequeued = queue.dequeue();
+		for (String id : dequeued.keySet()) {
+			queue.complete(id);
+		}
+		return dequeued;
+	}
+}
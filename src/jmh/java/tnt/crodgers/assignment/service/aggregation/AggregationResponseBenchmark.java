@@ -0,0 +1,91 @@
+package tnt.crodgers.assignment.service.aggregation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import tnt.crodgers.assignment.client.ResourceRegistry;
+
+/**
+ * {@link AggregationResponse#set(int, String, Object)} with many threads writing to the same response,
+ * as when several component batches complete at once for a large aggregation request,
+ * and the single-threaded population of a typically-sized response (which isolates the per-set() overhead, e.g. logging)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregationResponseBenchmark {
+
+	private static final int IDS = 1000;
+
+	private static final Object VALUE = Arrays.asList("box", "box", "pallet");
+
+	private final String[] ids = new String[IDS];
+
+	/** A response, and the index of the next of its IDs to set */
+	private static class Round {
+		private final AggregationResponse response;
+		private final AtomicInteger next = new AtomicInteger();
+
+		Round(String[] ids) {
+			response = new AggregationResponse(Collections.singletonMap("shipments", new HashSet<>(Arrays.asList(ids))));
+		}
+	}
+
+	private final AtomicReference<Round> round = new AtomicReference<>();
+
+	private static final ResourceRegistry RESOURCES = ResourceRegistry.shared();
+	private static final int SHIPMENTS = RESOURCES.slotOf("shipments");
+	private static final int PRICING = RESOURCES.slotOf("pricing");
+	private static final int TRACK = RESOURCES.slotOf("track");
+
+	/** A typical aggregation request's IDs for each resource */
+	private static final Set<String> TYPICAL_IDS = new HashSet<>(Arrays.asList("109347263", "123456891", "117347282"));
+
+	@Setup
+	public void setup() {
+		for (int i = 0; i < IDS; i++) {
+			ids[i] = Integer.toString(i);
+		}
+		round.set(new Round(ids));
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void concurrentSet() {
+		Round current = round.get();
+		int i = current.next.getAndIncrement();
+		if (i < IDS) {
+			current.response.set(SHIPMENTS, ids[i], VALUE);
+		} else if (i == IDS) {
+			// Fully populated, so move on to a fresh response
+			round.compareAndSet(current, new Round(ids));
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	@BenchmarkMode(Mode.AverageTime)
+	public AggregationResponse populate() {
+		AggregationResponse response = new AggregationResponse(RESOURCES, Arrays.asList(TYPICAL_IDS, TYPICAL_IDS, TYPICAL_IDS), 30000);
+		for (String id : TYPICAL_IDS) {
+			response.set(SHIPMENTS, id, VALUE);
+			response.set(PRICING, id, "14.24209");
+			response.set(TRACK, id, "NEW");
+		}
+		return response;
+	}
+}
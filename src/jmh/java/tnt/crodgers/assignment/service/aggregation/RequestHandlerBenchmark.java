@@ -0,0 +1,45 @@
+package tnt.crodgers.assignment.service.aggregation;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link RequestHandler#dedup(String)} of long comma-separated parameter values, with some duplication
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestHandlerBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int ids;
+
+	private RequestHandler handler;
+
+	private String paramVal;
+
+	@Setup
+	public void setup() {
+		handler = new RequestHandler();
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < ids; i++) {
+			// Every fourth ID repeats its predecessor
+			builder.append(i == 0 ? "" : ",").append(100000000 + i - (i % 4 == 3 ? 1 : 0));
+		}
+		paramVal = builder.toString();
+	}
+
+	@Benchmark
+	public Set<String> dedup() {
+		return handler.dedup(paramVal);
+	}
+}
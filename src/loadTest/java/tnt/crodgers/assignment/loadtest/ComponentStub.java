@@ -0,0 +1,111 @@
+package tnt.crodgers.assignment.loadtest;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.reactivestreams.Publisher;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+/**
+ * Embedded stand-in for the shipments, pricing and track component Services,
+ * answering after a configurable (jittered) latency and counting the calls and IDs it receives
+ */
+@Slf4j
+public class ComponentStub {
+
+	public static final String[] RESOURCES = {"shipments", "pricing", "track"};
+
+	private final long latencyMs, jitterMs;
+
+	private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> ids = new ConcurrentHashMap<>();
+
+	private DisposableServer server;
+
+	/**
+	 * @param latencyMs The minimum time taken to answer each call
+	 * @param jitterMs Up to this much (uniformly distributed) extra time is taken to answer each call
+	 */
+	public ComponentStub(long latencyMs, long jitterMs) {
+		this.latencyMs = latencyMs;
+		this.jitterMs = jitterMs;
+		for (String resource : RESOURCES) {
+			calls.put(resource, new LongAdder());
+			ids.put(resource, new LongAdder());
+		}
+	}
+
+	public ComponentStub start(int port) {
+		server = HttpServer.create()
+				.port(port)
+				// Also accepts cleartext HTTP/2, so the Service can be tested with -Dclient.http2=true
+				.protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+				.route(routes -> {
+					for (String resource : RESOURCES) {
+						routes.get("/" + resource, (request, response) -> respond(resource, request, response));
+					}
+				})
+				.bindNow();
+		log.info("Component stub listening on port " + server.port());
+		return this;
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.disposeNow();
+		}
+	}
+
+	public int getPort() {
+		return server.port();
+	}
+
+	public long getCalls(String resource) {
+		return calls.get(resource).sum();
+	}
+
+	public long getIds(String resource) {
+		return ids.get(resource).sum();
+	}
+
+	private Publisher<Void> respond(String resource, HttpServerRequest request, HttpServerResponse response) {
+		String q = new QueryStringDecoder(request.uri()).parameters()
+				.getOrDefault("q", Collections.singletonList("")).get(0);
+		String[] requested = q.isEmpty() ? new String[0] : q.split(",");
+		calls.get(resource).increment();
+		ids.get(resource).add(requested.length);
+
+		StringBuilder body = new StringBuilder("{");
+		for (int i = 0; i < requested.length; i++) {
+			body.append(i == 0 ? "" : ",").append('"').append(requested[i]).append("\":").append(value(resource));
+		}
+		body.append('}');
+
+		long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+		return response.header("Content-Type", "application/json")
+				.sendString(Mono.delay(Duration.ofMillis(delay)).map(tick -> body.toString()));
+	}
+
+	private static String value(String resource) {
+		switch (resource) {
+			case "shipments":
+				return "[\"box\",\"box\",\"pallet\"]";
+			case "pricing":
+				return "\"14.24209\"";
+			default:
+				return "\"NEW\"";
+		}
+	}
+}
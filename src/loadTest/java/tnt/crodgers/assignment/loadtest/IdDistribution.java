@@ -0,0 +1,102 @@
+package tnt.crodgers.assignment.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chooses which IDs the load generator requests, from a fixed key space of 9-digit IDs
+ * (as accepted by the component Services).
+ *
+ * Uniform traffic rarely repeats an ID, so exercises batching alone;
+ * Zipfian traffic concentrates on a few hot IDs, so also exercises coalescing and caching.
+ */
+public abstract class IdDistribution {
+
+	private static final int FIRST_ID = 100000000;
+
+	protected final int keySpace;
+
+	protected IdDistribution(int keySpace) {
+		if (keySpace < 1) {
+			throw new IllegalArgumentException("Invalid key space: " + keySpace);
+		}
+		this.keySpace = keySpace;
+	}
+
+	/**
+	 * @param name "uniform", or "zipf" (optionally with an exponent, e.g. "zipf:1.2"; default 1)
+	 * @param keySpace The number of distinct IDs to choose between
+	 */
+	public static IdDistribution of(String name, int keySpace) {
+		if (name.equalsIgnoreCase("uniform")) {
+			return new Uniform(keySpace);
+		} else if (name.toLowerCase().startsWith("zipf")) {
+			int sep = name.indexOf(':');
+			return new Zipf(keySpace, sep < 0 ? 1.0 : Double.parseDouble(name.substring(sep + 1)));
+		}
+		throw new IllegalArgumentException("Unknown ID distribution: " + name);
+	}
+
+	/**
+	 * @return The next ID to request
+	 */
+	public String next() {
+		return Integer.toString(FIRST_ID + nextRank());
+	}
+
+	/**
+	 * @return The 0-based index of the next ID within the key space
+	 */
+	protected abstract int nextRank();
+
+	static class Uniform extends IdDistribution {
+
+		Uniform(int keySpace) {
+			super(keySpace);
+		}
+
+		@Override
+		protected int nextRank() {
+			return ThreadLocalRandom.current().nextInt(keySpace);
+		}
+
+		@Override
+		public String toString() {
+			return "uniform(" + keySpace + ")";
+		}
+	}
+
+	/**
+	 * Rank k is chosen with probability proportional to 1/k^exponent, by binary search of the precomputed CDF
+	 */
+	static class Zipf extends IdDistribution {
+
+		private final double exponent;
+		private final double[] cdf;
+
+		Zipf(int keySpace, double exponent) {
+			super(keySpace);
+			this.exponent = exponent;
+			cdf = new double[keySpace];
+			double total = 0;
+			for (int k = 0; k < keySpace; k++) {
+				total += 1 / Math.pow(k + 1, exponent);
+				cdf[k] = total;
+			}
+			for (int k = 0; k < keySpace; k++) {
+				cdf[k] /= total;
+			}
+		}
+
+		@Override
+		protected int nextRank() {
+			int index = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+			return Math.min(keySpace - 1, index >= 0 ? index : -index - 1);
+		}
+
+		@Override
+		public String toString() {
+			return "zipf(" + keySpace + ", s=" + exponent + ")";
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package tnt.crodgers.assignment.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import tnt.crodgers.assignment.client.BatchPolicy;
+import tnt.crodgers.assignment.service.aggregation.AggregationService;
+
+/**
+ * End-to-end load test: boots the Aggregation Service against a {@link ComponentStub},
+ * drives it with open-model traffic (requests are issued on schedule regardless of how many are still outstanding,
+ * so a slow Service accrues a backlog, as it would in production) and reports the latency/throughput achieved
+ * along with how well the component calls were batched.
+ *
+ * Configured via System Properties, e.g. <pre>./gradlew loadTest -Dloadtest.rps=500 -Dclient.batch.size=20</pre>
+ * <pre>
+ * loadtest.rps              - the aggregation requests issued per second (default 200)
+ * loadtest.duration.s       - how long to issue requests for (default 30)
+ * loadtest.ids              - the number of IDs per resource in each aggregation request (default 3)
+ * loadtest.keyspace         - the number of distinct IDs to choose from (default 10000)
+ * loadtest.distribution     - how IDs are chosen; uniform or zipf[:exponent] (default uniform)
+ * loadtest.stub.latency.ms  - the minimum component call latency (default 50)
+ * loadtest.stub.jitter.ms   - the maximum additional, random, component call latency (default 50)
+ * loadtest.port             - the port to run the Aggregation Service on (default 8081)
+ * loadtest.timeout.ms       - if set, the deadline each request gives the Service via its X-Request-Timeout header
+ * </pre>
+ * Any client.* properties are passed through to tune the Service under test.
+ */
+@Slf4j
+public class LoadTest {
+
+	/** How often the generator wakes up to issue the requests that have fallen due */
+	private static final long TICK_MS = 1;
+
+	/** How long to wait for outstanding requests once the test period is over */
+	private static final long DRAIN_TIMEOUT_S = 60;
+
+	private final int rps, durationS, idsPerRequest, port;
+
+	/** The deadline given with each request, if any */
+	private final String timeoutMs = System.getProperty("loadtest.timeout.ms");
+	private final IdDistribution distribution;
+
+	private final ComponentStub stub;
+
+	private final LongAdder succeeded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	/** Per-request latency in micros, indexed by the order in which requests were issued */
+	private long[] latencies;
+
+	public LoadTest(int rps, int durationS, int idsPerRequest, IdDistribution distribution, int port, ComponentStub stub) {
+		this.rps = rps;
+		this.durationS = durationS;
+		this.idsPerRequest = idsPerRequest;
+		this.distribution = distribution;
+		this.port = port;
+		this.stub = stub;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Properties props = System.getProperties();
+		ComponentStub stub = new ComponentStub(
+				Long.parseLong(props.getProperty("loadtest.stub.latency.ms", "50")),
+				Long.parseLong(props.getProperty("loadtest.stub.jitter.ms", "50"))).start(0);
+		int port = Integer.parseInt(props.getProperty("loadtest.port", "8081"));
+
+		// The component clients read their configuration when first loaded, so this must precede startup
+		System.setProperty("client.url", "http://localhost:" + stub.getPort());
+		System.setProperty("server.port", Integer.toString(port));
+		ConfigurableApplicationContext service = SpringApplication.run(AggregationService.class, args);
+
+		try {
+			new LoadTest(
+					Integer.parseInt(props.getProperty("loadtest.rps", "200")),
+					Integer.parseInt(props.getProperty("loadtest.duration.s", "30")),
+					Integer.parseInt(props.getProperty("loadtest.ids", "3")),
+					IdDistribution.of(props.getProperty("loadtest.distribution", "uniform"),
+							Integer.parseInt(props.getProperty("loadtest.keyspace", "10000"))),
+					port, stub).run();
+		} finally {
+			service.close();
+			stub.stop();
+		}
+	}
+
+	public void run() throws InterruptedException {
+		final int total = rps * durationS;
+		latencies = new long[total];
+		Arrays.fill(latencies, -1);
+
+		// Sized so that the generator never waits on a connection, which would close the open model
+		ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+				.maxConnections(Math.max(500, rps * 2))
+				.pendingAcquireMaxCount(-1)
+				.build();
+		WebClient webClient = WebClient.builder()
+				.baseUrl("http://localhost:" + port)
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+				.build();
+
+		log.info(String.format("Issuing %d req/s for %ds, %d IDs/resource each, %s",
+				rps, durationS, idsPerRequest, distribution));
+		CountDownLatch done = new CountDownLatch(total);
+		AtomicInteger issued = new AtomicInteger();
+		final long start = System.nanoTime();
+		while (issued.get() < total) {
+			long due = Math.min(total, (System.nanoTime() - start) * rps / TimeUnit.SECONDS.toNanos(1));
+			while (issued.get() < due) {
+				int index = issued.getAndIncrement();
+				issue(webClient, index, start + index * TimeUnit.SECONDS.toNanos(1) / rps, done);
+			}
+			Thread.sleep(TICK_MS);
+		}
+		long issuedNanos = System.nanoTime() - start;
+
+		if (!done.await(DRAIN_TIMEOUT_S, TimeUnit.SECONDS)) {
+			log.warn(done.getCount() + " requests still outstanding after " + DRAIN_TIMEOUT_S + "s");
+		}
+		long elapsedNanos = System.nanoTime() - start;
+		connections.disposeLater().block();
+
+		report(issuedNanos, elapsedNanos);
+	}
+
+	/**
+	 * @param intended When the request was scheduled to be sent, from which its latency is measured
+	 * 			(vs when it was actually sent, which would hide any stalls of the generator itself)
+	 */
+	private void issue(WebClient webClient, int index, long intended, CountDownLatch done) {
+		webClient.get()
+				.uri(builder -> builder.path("/aggregation")
+						.queryParam("shipments", ids())
+						.queryParam("pricing", ids())
+						.queryParam("track", ids())
+						.build())
+				.accept(MediaType.APPLICATION_JSON)
+				.headers(headers -> {
+					if (timeoutMs != null) {
+						headers.set("X-Request-Timeout", timeoutMs);
+					}
+				})
+				.retrieve()
+				.bodyToMono(byte[].class)
+				.timeout(Duration.ofSeconds(DRAIN_TIMEOUT_S))
+				.subscribe(
+						body -> {
+							latencies[index] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+							succeeded.increment();
+						},
+						error -> {
+							failed.increment();
+							done.countDown();
+						},
+						done::countDown);
+	}
+
+	private String ids() {
+		StringBuilder ids = new StringBuilder();
+		for (int i = 0; i < idsPerRequest; i++) {
+			ids.append(i == 0 ? "" : ",").append(distribution.next());
+		}
+		return ids.toString();
+	}
+
+	private void report(long issuedNanos, long elapsedNanos) {
+		long[] completed = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+
+		StringBuilder report = new StringBuilder("\nLoad test results\n-----------------\n");
+		report.append(String.format("Offered:    %d requests at %.1f req/s%n",
+				latencies.length, latencies.length / seconds(issuedNanos)));
+		report.append(String.format("Completed:  %d succeeded, %d failed, %.1f req/s over %.1fs%n",
+				succeeded.sum(), failed.sum(), completed.length / seconds(elapsedNanos), seconds(elapsedNanos)));
+		if (completed.length > 0) {
+			report.append(String.format("Latency:    p50=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms%n",
+					percentile(completed, 50), percentile(completed, 99), percentile(completed, 99.9),
+					completed[completed.length - 1] / 1000.0));
+		}
+		report.append("Component calls:\n");
+		for (String resource : ComponentStub.RESOURCES) {
+			long calls = stub.getCalls(resource), ids = stub.getIds(resource);
+			int batchSize = BatchPolicy.forResource(resource).getBatchSize();
+			double perCall = calls == 0 ? 0 : (double) ids / calls;
+			report.append(String.format("  %-10s %d calls for %d IDs (%d requested); %.2f IDs/call, fill ratio %.2f of %d%n",
+					resource, calls, ids, latencies.length * (long) idsPerRequest, perCall, perCall / batchSize, batchSize));
+		}
+		log.info(report.toString());
+	}
+
+	private static double percentile(long[] sorted, double percentile) {
+		int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1000.0;
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+}
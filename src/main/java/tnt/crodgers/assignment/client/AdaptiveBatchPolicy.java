@@ -0,0 +1,137 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Batch policy that sizes batches according to the observed ID arrival rate and component call latency,
+ * aiming to keep end-to-end latency (time queued + time in flight) within a target:
+ * 	- the flush delay is whatever remains of the target once the (smoothed) component latency is allowed for,
+ * 		capped at the configured delay
+ *  - the batch size is the number of IDs expected to arrive within that delay,
+ *  	bounded by the configured minimum/maximum
+ * So heavy traffic produces larger batches, whereas under light traffic lone IDs are sent (almost) immediately.
+ *
+ * Configured per resource via {@link ClientProperties}, in addition to those of {@link BatchPolicy}:
+ * <pre>
+ * client.{resource}.batch.target.latency.ms - the end-to-end latency to aim for (default 1000)
+ * client.{resource}.batch.min.size          - the smallest batch size to use (default 1)
+ * client.{resource}.batch.max.size          - the largest batch size to use (default 100)
+ * </pre>
+ */
+@Slf4j
+public class AdaptiveBatchPolicy extends BatchPolicy {
+
+	static final long DEFAULT_TARGET_LATENCY_MS = 1000;
+	static final int DEFAULT_MIN_SIZE = 1;
+	static final int DEFAULT_MAX_SIZE = 100;
+
+	/** Arrival rate is sampled over windows of (at least) this length */
+	private static final long SAMPLE_WINDOW_MS = 100;
+
+	/** Weight given to each new sample in the moving average of latency */
+	private static final double SMOOTHING = 0.2;
+
+	/**
+	 * Time constant of the moving average of arrival rate, each sample being weighted by the time it covers;
+	 * so a window of {@link #SAMPLE_WINDOW_MS} gets about the weight of {@link #SMOOTHING}, whereas a long idle gap
+	 * all but replaces the average, rather than leaving the rate of the burst before it to hold up lone IDs
+	 */
+	private static final double RATE_TIME_CONSTANT_MS = SAMPLE_WINDOW_MS / -Math.log(1 - SMOOTHING);
+
+	private final long targetLatencyMs;
+	private final int minSize, maxSize;
+
+	private final LongAdder arrivals = new LongAdder();
+	private final AtomicLong windowStart;
+
+	/** Smoothed arrival rate, in IDs per ms */
+	private volatile double arrivalRate;
+	/** Smoothed component latency, in ms */
+	private volatile double latencyMs;
+
+	/** The current policy, recalculated as samples are taken so reads are cheap */
+	private volatile int currentBatchSize;
+	private volatile long currentDelayMs;
+
+	/**
+	 * @param base The policy giving the initial batch size, maximum delay and flush settings
+	 */
+	public AdaptiveBatchPolicy(BatchPolicy base, long targetLatencyMs, int minSize, int maxSize) {
+		this(base, targetLatencyMs, minSize, maxSize, System.currentTimeMillis());
+	}
+
+	protected AdaptiveBatchPolicy(BatchPolicy base, long targetLatencyMs, int minSize, int maxSize, long now) {
+		super(base);
+		if (minSize < 1 || maxSize < minSize) {
+			throw new IllegalArgumentException("Invalid adaptive batch bounds: min=" + minSize + ", max=" + maxSize);
+		}
+		this.targetLatencyMs = targetLatencyMs;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.windowStart = new AtomicLong(now);
+		this.currentBatchSize = base.getBatchSize();
+		this.currentDelayMs = Math.min(base.getDelayMs(), targetLatencyMs);
+	}
+
+	static AdaptiveBatchPolicy forResource(String resource, BatchPolicy base) {
+		return new AdaptiveBatchPolicy(base,
+				ClientProperties.getLong(resource, "batch.target.latency.ms", DEFAULT_TARGET_LATENCY_MS),
+				ClientProperties.getInt(resource, "batch.min.size", DEFAULT_MIN_SIZE),
+				ClientProperties.getInt(resource, "batch.max.size", DEFAULT_MAX_SIZE));
+	}
+
+	@Override
+	public int getBatchSize() {
+		return currentBatchSize;
+	}
+
+	@Override
+	public long getDelayMs() {
+		return currentDelayMs;
+	}
+
+	@Override
+	public void recordArrivals(int count) {
+		recordArrivals(count, System.currentTimeMillis());
+	}
+
+	protected void recordArrivals(int count, long now) {
+		arrivals.add(count);
+		long start = windowStart.get();
+		long elapsed = now - start;
+		// Only the thread that closes the window takes the sample
+		if (elapsed >= SAMPLE_WINDOW_MS && windowStart.compareAndSet(start, now)) {
+			double sample = (double) arrivals.sumThenReset() / elapsed;
+			double weight = 1 - Math.exp(-elapsed / RATE_TIME_CONSTANT_MS);
+			arrivalRate = arrivalRate == 0 ? sample : arrivalRate + weight * (sample - arrivalRate);
+			recalculate();
+		}
+	}
+
+	@Override
+	public synchronized void recordLatency(long latencyMs) {
+		this.latencyMs = this.latencyMs == 0 ? latencyMs : smooth(this.latencyMs, latencyMs);
+		recalculate();
+	}
+
+	private static double smooth(double average, double sample) {
+		return average + SMOOTHING * (sample - average);
+	}
+
+	private void recalculate() {
+		long budget = Math.max(0, targetLatencyMs - Math.round(latencyMs));
+		long newDelay = Math.min(super.getDelayMs(), budget);
+		long expected = (long) Math.ceil(arrivalRate * newDelay);
+		int newSize = (int) Math.max(minSize, Math.min(maxSize, expected));
+
+		if ((newSize != currentBatchSize || newDelay != currentDelayMs) && log.isDebugEnabled()) {
+			log.debug(String.format("Batch policy now size=%d, delay=%dms (rate=%.3f/ms, latency=%.0fms)",
+					newSize, newDelay, arrivalRate, latencyMs));
+		}
+		currentDelayMs = newDelay;
+		currentBatchSize = newSize;
+	}
+}
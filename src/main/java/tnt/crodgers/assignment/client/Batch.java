@@ -0,0 +1,123 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+
+import lombok.Getter;
+import lombok.Setter;
+import reactor.core.Disposable;
+
+/**
+ * A set of IDs sent in a single component call, or several if it is hedged;
+ * the response(s) awaiting their data are tracked by the {@link RequestQueue} until the IDs are completed.
+ */
+class Batch {
+	/** The IDs in this batch */
+	@Getter
+	private final Collection<String> ids;
+
+	/** The number of times the IDs have previously been sent, as (part of) a batch that failed */
+	@Getter
+	private final int attempt;
+
+	/** When the component call was made, for latency tracking */
+	private final long sentNanos = System.nanoTime();
+
+	/** The calls made for the batch that may yet answer it, and their subscriptions (if known) so they can be cancelled */
+	private final Map<UUID, Disposable> calls = new HashMap<>(2);
+	private int outstanding;
+	private boolean settled;
+
+	/** The circuit breaker's permit for the batch's calls, by which their outcome is recorded */
+	@Getter
+	@Setter
+	private long permit;
+
+	/** Whether a call for the batch timed out, in which case retrying it would likely only time out again */
+	@Getter
+	@Setter
+	private volatile boolean timedOut;
+
+	/** The hedge armed for the batch, if any */
+	@Getter
+	@Setter
+	private volatile ScheduledFuture<?> hedge;
+
+	Batch(Collection<String> ids) {
+		this(ids, 0);
+	}
+
+	Batch(Collection<String> ids, int attempt) {
+		this.ids = ids;
+		this.attempt = attempt;
+	}
+
+	/**
+	 * @return The time since the batch's component call was made
+	 */
+	long getAgeMs() {
+		return getAgeNanos() / 1_000_000;
+	}
+
+	long getAgeNanos() {
+		return System.nanoTime() - sentNanos;
+	}
+
+	/**
+	 * Registers a call about to be made for the batch
+	 * @return Whether the call is still wanted, i.e. the batch hasn't been answered
+	 */
+	synchronized boolean expect(UUID callId) {
+		if (settled) {
+			return false;
+		}
+		calls.put(callId, null);
+		outstanding++;
+		return true;
+	}
+
+	/**
+	 * @param subscription The call's subscription, which is cancelled straight away if it is no longer awaited
+	 * @return Whether the call is still awaited
+	 */
+	boolean made(UUID callId, Disposable subscription) {
+		synchronized (this) {
+			if (calls.containsKey(callId)) {
+				calls.put(callId, subscription);
+				return true;
+			}
+		}
+		// Already settled, whether by this call (e.g. failing immediately) or by another
+		if (subscription != null) {
+			subscription.dispose();
+		}
+		return false;
+	}
+
+	/**
+	 * @param success Whether the call returned usable data
+	 * @return Whether the call answers the batch, vs another call having already done so,
+	 * 			or it failing while another may yet succeed
+	 */
+	synchronized boolean settle(UUID callId, boolean success) {
+		calls.remove(callId);
+		outstanding--;
+		if (settled || (!success && outstanding > 0)) {
+			return false;
+		}
+		settled = true;
+		return true;
+	}
+
+	/**
+	 * @return The calls superseded by the one that answered the batch, which are no longer awaited
+	 */
+	synchronized Map<UUID, Disposable> losers() {
+		Map<UUID, Disposable> losers = new HashMap<>(calls);
+		calls.clear();
+		return losers;
+	}
+}
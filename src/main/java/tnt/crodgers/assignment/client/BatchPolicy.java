@@ -0,0 +1,110 @@
+package tnt.crodgers.assignment.client;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Determines how many IDs a {@link QueueBackedClient} batches into a single component call,
+ * and how long a partially-filled batch may wait before being sent regardless.
+ *
+ * Configured per resource via {@link ClientProperties}:
+ * <pre>
+ * client.{resource}.batch.size     - the queue length at which a batch is sent (default 5)
+ * client.{resource}.batch.delay.ms - the longest a queued ID waits before being sent (default 5000)
+ * client.{resource}.batch.adaptive - whether to size batches based on observed traffic; see {@link AdaptiveBatchPolicy}
+ * client.{resource}.batch.drain    - whether a flush sends the entire backlog (as multiple batches) vs a single batch (default true)
+ * client.{resource}.batch.max.inflight - the most batches that may be awaiting a response at once, 0 meaning no limit (default 10);
+ * 										  the initial limit if adjusted adaptively, see {@link ConcurrencyLimit}
+ * </pre>
+ */
+@ToString
+public class BatchPolicy {
+
+	static final int DEFAULT_BATCH_SIZE = 5;
+	static final long DEFAULT_DELAY_MS = 5000;
+	static final boolean DEFAULT_DRAIN = true;
+	static final int DEFAULT_MAX_IN_FLIGHT = ConcurrencyLimit.DEFAULT_LIMIT;
+
+	@Getter
+	private final int batchSize;
+
+	@Getter
+	private final long delayMs;
+
+	/** Whether a flush splits the whole backlog into batches, vs sending one batch per flush */
+	@Getter
+	private final boolean drain;
+
+	/** The most batches that may be in flight at once; excess batches remain queued until a response frees a slot */
+	@Getter
+	private final ConcurrencyLimit concurrencyLimit;
+
+	public BatchPolicy(int batchSize, long delayMs) {
+		this(batchSize, delayMs, DEFAULT_DRAIN, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	public BatchPolicy(int batchSize, long delayMs, boolean drain, int maxInFlight) {
+		this(batchSize, delayMs, drain, new ConcurrencyLimit(maxInFlight));
+	}
+
+	public BatchPolicy(int batchSize, long delayMs, boolean drain, ConcurrencyLimit concurrencyLimit) {
+		if (batchSize < 1 || delayMs < 0) {
+			throw new IllegalArgumentException("Invalid batch policy: size=" + batchSize + ", delay=" + delayMs);
+		}
+		this.batchSize = batchSize;
+		this.delayMs = delayMs;
+		this.drain = drain;
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	/**
+	 * @param base The policy whose (initial) settings, and concurrency limit, to adopt
+	 */
+	protected BatchPolicy(BatchPolicy base) {
+		this(base.batchSize, base.delayMs, base.drain, base.concurrencyLimit);
+	}
+
+	/**
+	 * @return The default policy; batches of 5, waiting no more than 5 seconds
+	 */
+	public static BatchPolicy defaults() {
+		return new BatchPolicy(DEFAULT_BATCH_SIZE, DEFAULT_DELAY_MS);
+	}
+
+	/**
+	 * @param resource The resource whose System Property configuration to apply
+	 * @return The configured policy for the resource
+	 */
+	public static BatchPolicy forResource(String resource) {
+		BatchPolicy policy = new BatchPolicy(
+				ClientProperties.getInt(resource, "batch.size", DEFAULT_BATCH_SIZE),
+				ClientProperties.getLong(resource, "batch.delay.ms", DEFAULT_DELAY_MS),
+				ClientProperties.getBoolean(resource, "batch.drain", DEFAULT_DRAIN),
+				ConcurrencyLimit.forResource(resource, ClientProperties.getInt(resource, "batch.max.inflight", DEFAULT_MAX_IN_FLIGHT)));
+		if (ClientProperties.getBoolean(resource, "batch.adaptive", false)) {
+			return AdaptiveBatchPolicy.forResource(resource, policy);
+		}
+		return policy;
+	}
+
+	/**
+	 * @return The most batches that may currently be in flight
+	 */
+	public int getMaxInFlight() {
+		return concurrencyLimit.getLimit();
+	}
+
+	/**
+	 * Feedback hook for newly queued IDs; ignored by the fixed policy.
+	 * @param count The number of IDs that have just been requested
+	 */
+	public void recordArrivals(int count) {
+	}
+
+	/**
+	 * Feedback hook for completed component calls; ignored by the fixed policy.
+	 * @param latencyMs The time taken for a component call to respond
+	 */
+	public void recordLatency(long latencyMs) {
+	}
+}
@@ -0,0 +1,241 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-resource circuit breaker, which stops calls being made to a component Service that is failing or slow
+ * so its waiters can be answered (with null data) immediately rather than piling up behind calls likely to fail:
+ * 	- CLOSED: calls are made, their outcomes recorded over a window of the most recent calls;
+ * 		once enough of them have failed (errored, or taken too long) the breaker opens
+ * 	- OPEN: no calls are made, until the open period has passed
+ * 	- HALF_OPEN: a single probe call is made; its success closes the breaker, its failure re-opens it,
+ * 		as does it going unanswered for longer than the open period or the slow call threshold (whichever is longer)
+ *
+ * Outcomes are recorded per batch rather than per ID, so the (short) synchronized sections are not contended.
+ * Each call is granted a permit naming the state it was admitted in, and only outcomes of calls admitted since the latest
+ * change of state count: so a straggler from before the breaker opened can't close or re-open it in place of the probe,
+ * nor count towards the window that was cleared when it closed.
+ *
+ * Configured per resource via {@link ClientProperties}:
+ * <pre>
+ * client.{resource}.breaker.enabled      - whether to use a circuit breaker (default true)
+ * client.{resource}.breaker.failure.rate - the percentage of failed calls in the window at which the breaker opens (default 50)
+ * client.{resource}.breaker.slow.call.ms - calls taking at least this long count as failures (default 5000)
+ * client.{resource}.breaker.window       - the number of most recent calls considered (default 20)
+ * client.{resource}.breaker.min.calls    - the fewest calls in the window before the failure rate is acted upon (default 10)
+ * client.{resource}.breaker.open.ms      - how long the breaker stays open before probing the component (default 5000)
+ * </pre>
+ */
+@Slf4j
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	static final int DEFAULT_FAILURE_RATE = 50;
+	static final long DEFAULT_SLOW_CALL_MS = 5000;
+	static final int DEFAULT_WINDOW = 20;
+	static final int DEFAULT_MIN_CALLS = 10;
+	static final long DEFAULT_OPEN_MS = 5000;
+
+	/** Returned by {@link #tryAcquire()} when the call may not be made */
+	public static final long NO_PERMIT = -1;
+
+	private static final CircuitBreaker DISABLED = new CircuitBreaker("disabled", 100, Long.MAX_VALUE, 1, Integer.MAX_VALUE, 0) {
+		@Override
+		public long tryAcquire() {
+			return 0;
+		}
+
+		@Override
+		public boolean isRejecting() {
+			return false;
+		}
+
+		@Override
+		public void abandon(long permit) {
+		}
+
+		@Override
+		public void record(long permit, long latencyMs, boolean success) {
+		}
+	};
+
+	private final String resource;
+	private final int failureRate;
+	private final long slowCallMs;
+	private final int minCalls;
+	private final long openMs;
+
+	/** Ring buffer of the most recent outcomes, true meaning failed */
+	private final boolean[] window;
+	private int next, recorded, failures;
+
+	@Getter
+	private volatile State state = State.CLOSED;
+
+	/** Counts the changes of state, identifying the one that calls' permits were granted in */
+	private long generation;
+
+	/** When the breaker may next probe the component, as per {@link System#nanoTime()}, whilst open */
+	private long openUntilNanos;
+
+	/** When the outstanding probe was granted, as per {@link System#nanoTime()}, whilst half-open */
+	private long probeNanos;
+
+	/** How long a probe may go unanswered before it is deemed to have failed */
+	private final long probeTimeoutNanos;
+
+	/**
+	 * @param failureRate The percentage of failures (in the window) at which to open
+	 * @param slowCallMs Calls taking at least this long count as failures
+	 * @param window The number of most recent calls to consider
+	 * @param minCalls The fewest calls before the failure rate is acted upon
+	 * @param openMs How long to remain open before probing
+	 */
+	public CircuitBreaker(String resource, int failureRate, long slowCallMs, int window, int minCalls, long openMs) {
+		if (failureRate < 1 || failureRate > 100 || window < 1 || minCalls < 1 || openMs < 0) {
+			throw new IllegalArgumentException("Invalid circuit breaker: failure rate=" + failureRate + "%, window=" + window
+					+ ", min calls=" + minCalls + ", open=" + openMs + "ms");
+		}
+		this.resource = resource;
+		this.failureRate = failureRate;
+		this.slowCallMs = slowCallMs;
+		this.window = new boolean[window];
+		this.minCalls = Math.min(minCalls, window);
+		this.openMs = openMs;
+		this.probeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(openMs, slowCallMs));
+	}
+
+	/**
+	 * @return A breaker that never opens
+	 */
+	public static CircuitBreaker disabled() {
+		return DISABLED;
+	}
+
+	/**
+	 * @param resource The resource whose System Property configuration to apply
+	 * @return The configured breaker for the resource
+	 */
+	public static CircuitBreaker forResource(String resource) {
+		if (!ClientProperties.getBoolean(resource, "breaker.enabled", true)) {
+			return DISABLED;
+		}
+		return new CircuitBreaker(resource,
+				ClientProperties.getInt(resource, "breaker.failure.rate", DEFAULT_FAILURE_RATE),
+				ClientProperties.getLong(resource, "breaker.slow.call.ms", DEFAULT_SLOW_CALL_MS),
+				ClientProperties.getInt(resource, "breaker.window", DEFAULT_WINDOW),
+				ClientProperties.getInt(resource, "breaker.min.calls", DEFAULT_MIN_CALLS),
+				ClientProperties.getLong(resource, "breaker.open.ms", DEFAULT_OPEN_MS));
+	}
+
+	/**
+	 * Asks to make a call; whilst open, the first caller once the open period has passed is granted the probe call.
+	 * @return The call's permit, by which its outcome is to be {@link #record(long, long, boolean)}ed,
+	 * 			or {@link #NO_PERMIT} if it may not be made
+	 */
+	public synchronized long tryAcquire() {
+		switch (state) {
+			case CLOSED:
+				return generation;
+			case OPEN:
+				if (System.nanoTime() - openUntilNanos >= 0) {
+					transition(State.HALF_OPEN);
+					probeNanos = System.nanoTime();
+					log.info("{} circuit breaker half-open; probing", resource);
+					return generation;
+				}
+				return NO_PERMIT;
+			default:
+				// The probe is still outstanding, unless it has been for so long that it has failed regardless
+				if (System.nanoTime() - probeNanos > probeTimeoutNanos) {
+					open("the probe call went unanswered");
+				}
+				return NO_PERMIT;
+		}
+	}
+
+	/**
+	 * Gives up a call granted by {@link #tryAcquire()} without making it, so that a probe isn't left outstanding forever
+	 */
+	public synchronized void abandon(long permit) {
+		if (state == State.HALF_OPEN && permit == generation) {
+			transition(State.OPEN);
+			openUntilNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * @return Whether new requests would be turned away without waiting, i.e. the breaker is open and not yet due a probe;
+	 * 			a cheap check that doesn't claim the probe
+	 */
+	public boolean isRejecting() {
+		if (state != State.OPEN) {
+			return false;
+		}
+		synchronized (this) {
+			return state == State.OPEN && System.nanoTime() - openUntilNanos < 0;
+		}
+	}
+
+	/**
+	 * @param permit The call's permit, as granted by {@link #tryAcquire()}
+	 * @param latencyMs How long the call took
+	 * @param success Whether the call returned usable data
+	 */
+	public synchronized void record(long permit, long latencyMs, boolean success) {
+		if (permit != generation) {
+			// Admitted before the latest change of state, so it says nothing about the component since
+			return;
+		}
+		boolean failed = !success || latencyMs >= slowCallMs;
+		if (state == State.HALF_OPEN) {
+			// Only the probe is granted a permit whilst half-open
+			if (failed) {
+				open("the probe call failed");
+			} else {
+				log.info("{} circuit breaker closed", resource);
+				transition(State.CLOSED);
+				clearWindow();
+			}
+			return;
+		}
+
+		if (recorded == window.length) {
+			// Overwriting the oldest outcome
+			failures -= window[next] ? 1 : 0;
+		} else {
+			recorded++;
+		}
+		window[next] = failed;
+		failures += failed ? 1 : 0;
+		next = (next + 1) % window.length;
+
+		if (state == State.CLOSED && recorded >= minCalls && failures * 100 >= failureRate * recorded) {
+			open(failures + "/" + recorded + " calls failed");
+		}
+	}
+
+	private void open(String reason) {
+		log.warn("{} circuit breaker open for {}ms since {}", resource, openMs, reason);
+		transition(State.OPEN);
+		openUntilNanos = System.nanoTime() + openMs * 1_000_000;
+		clearWindow();
+	}
+
+	private void transition(State to) {
+		state = to;
+		generation++;
+	}
+
+	private void clearWindow() {
+		recorded = 0;
+		failures = 0;
+		next = 0;
+	}
+}
@@ -1,8 +1,9 @@
 package tnt.crodgers.assignment.client;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 import org.springframework.http.MediaType;
@@ -10,56 +11,87 @@ import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClient.RequestHeadersSpec;
 
-import io.netty.channel.ChannelOption;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
 
 /**
  * Integration class for invoking a component API.
- * The relative path is parameterised and the base URL can be overridden via the System Property client.url
+ * The relative path is parameterised and the base URL can be overridden via the System Property client.url,
+ * or per resource via client.{resource}.url; likewise the response timeout via client.{resource}.timeout.ms (default 20000)
  */
 @Slf4j
 public class Client {
 	
-	/** Timeout in-flight requests after 20 seconds to ensure eventual cleanup */
+	/** Timeout in-flight requests after 20 seconds (unless configured otherwise) to ensure eventual cleanup */
 	private static final int RESPONSE_TIMEOUT_MS = 20000;
 
-	private final HttpClient httpClient = HttpClient.create()
-			  .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
-			  .responseTimeout(Duration.ofMillis(RESPONSE_TIMEOUT_MS));
-	
+	private final Duration responseTimeout;
+
 	private final WebClient client;
 
 	private final String resource;
 
-	/** System property key for overriding the high traffic alert threshold with: <pre>-Dalert_threshold={avg num requests per sec}</pre> */
-	private static final String SYS_PROP_CLIENT_URL = "client.url";
-	private static final String SYS_PROP_CLIENT_URL_DEFAULT = "http://localhost:8090";
+	/**
+	 * Whether to log each component response body, configured via <pre>client.{resource}.log.body</pre> (default false);
+	 * intended for debugging only, since bodies can be large and each is logged in full
+	 */
+	private final boolean logBody;
+
+	private static final String CLIENT_URL_DEFAULT = "http://localhost:8090";
+
+	/** Stands in for an empty body (e.g. a 204), so that the handler is still called, and only the once */
+	private static final byte[] NO_BODY = new byte[0];
 
 	
 	/**
-	 * @return The absolute path to the log file to consume
+	 * @return The base URL of the resource's component Service
 	 */
-	private static String getClientUrl() {
-		Properties props = System.getProperties();
-		return props.getProperty(SYS_PROP_CLIENT_URL, SYS_PROP_CLIENT_URL_DEFAULT);
+	private static String getClientUrl(String resource) {
+		// Falls back to the all-resource client.url
+		String url = ClientProperties.get(resource, "url");
+		return url != null ? url : CLIENT_URL_DEFAULT;
 	}
 	
 	public Client(String resource) {
 		this.resource = resource;
+		this.logBody = ClientProperties.getBoolean(resource, "log.body", false);
+		this.responseTimeout = Duration.ofMillis(ClientProperties.getLong(resource, "timeout.ms", RESPONSE_TIMEOUT_MS));
+		String baseUrl = getClientUrl(resource);
+		// Clients for resources on the same host share its connection pool
+		HttpClient httpClient = ConnectionPools.forUrl(baseUrl, Duration.ofMillis(RESPONSE_TIMEOUT_MS));
 		client = WebClient.builder()
 				  .clientConnector(new ReactorClientHttpConnector(httpClient))
-				  .baseUrl(getClientUrl())
+				  .baseUrl(baseUrl)
 				  .build();
 	}
 	
-	protected Mono<String> getCaller(String qValue) {
+	/**
+	 * @return The call, emitting the response body as its raw bytes; decoding is left to the {@link ResponseHandler}
+	 */
+	protected Mono<byte[]> getCaller(String qValue) {
 		@SuppressWarnings("rawtypes")
 		RequestHeadersSpec spec = client.get().uri(uriBuilder -> uriBuilder.path("/"+resource)
 				.queryParam("q", qValue).build())
-				.accept(MediaType.APPLICATION_JSON);
-		return spec.retrieve().bodyToMono(String.class);
+				.accept(MediaType.APPLICATION_JSON)
+				// The pool is shared with other resources, so apply this resource's timeout per request
+				.httpRequest(request -> ((HttpClientRequest) request.getNativeRequest()).responseTimeout(responseTimeout));
+		return spec.retrieve().bodyToMono(byte[].class);
+	}
+
+	/**
+	 * @return Whether the call failed for want of a response (or a pooled connection) in time, vs e.g. an error status
+	 */
+	static boolean isTimeout(Throwable e) {
+		// WebClient wraps the underlying exception, so check the causes too
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof TimeoutException || cause instanceof io.netty.handler.timeout.TimeoutException) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -67,19 +99,32 @@ public class Client {
 	 * @param qValues the "q" parameter value to use for the API call
 	 * @param handler the callback to invoke when a response is received
 	 * @param callId The correlation ID used to match the response with its aggregation request
+	 * @return The call's subscription, disposing of which cancels it (e.g. once a hedged call has lost)
 	 */
-	public void call(String qValues, ResponseHandler handler, UUID callId) {
-		Mono<String> caller = getCaller(qValues);
+	public Disposable call(String qValues, ResponseHandler handler, UUID callId) {
+		Mono<byte[]> caller = getCaller(qValues);
 
-        log.info("Querying " + resource + "?q=" + qValues);
-        caller.onErrorResume(e -> {
-            log.warn(resource + " error " + e);
-            handler.handleResponse(callId, qValues, null);
+        log.debug("Querying {}?q={}", resource, qValues);
+        return caller.defaultIfEmpty(NO_BODY).onErrorResume(e -> {
+            log.warn("{} error {}", resource, e.toString());
+            if (isTimeout(e)) {
+                handler.handleTimeout(callId, qValues);
+            } else {
+                handler.handleResponse(callId, qValues, (byte[]) null);
+            }
             return Mono.empty();
-        }).subscribe(new Consumer<String>() {
+        }).subscribe(new Consumer<byte[]>() {
 			@Override
-			public void accept(String body) {
-				log.info(resource + " rxd " + body);
+			public void accept(byte[] body) {
+				if (body == NO_BODY) {
+					// No data to be had; as with an error, the handler must still hear of it to release the batch's waiters
+					log.warn("{} empty response", resource);
+					handler.handleResponse(callId, qValues, (byte[]) null);
+					return;
+				}
+				if (logBody) {
+					log.info("{} rxd {}", resource, new String(body, StandardCharsets.UTF_8));
+				}
 				handler.handleResponse(callId, qValues, body);
 			}
 		});
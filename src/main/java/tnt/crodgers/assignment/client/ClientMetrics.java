@@ -0,0 +1,180 @@
+package tnt.crodgers.assignment.client;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The Micrometer meters describing a {@link QueueBackedClient}'s batching pipeline, all tagged with its resource:
+ * <pre>
+ * aggregation.client.queue.depth       - gauge of IDs queued awaiting a batch
+ * aggregation.client.inflight.batches  - gauge of batches awaiting a component response
+ * aggregation.client.inflight.ids      - gauge of IDs awaiting a component response
+ * aggregation.client.inflight.limit    - gauge of the most batches currently allowed in flight
+ * aggregation.client.batches           - counter of batches sent, by reason (threshold: the batch filled, deadline: its delay expired)
+ * aggregation.client.batch.size        - distribution of the number of IDs per batch
+ * aggregation.client.calls             - timer of component call latency, by outcome (success, error)
+ * aggregation.client.waiters           - distribution of the number of aggregation responses awaiting each ID's data
+ * aggregation.client.retries           - counter of batches (re)sent after an earlier call for their IDs failed
+ * aggregation.client.hedges            - counter of duplicate calls made for batches slow to be answered
+ * aggregation.client.shed              - counter of IDs answered with null data, without a component call, as the circuit breaker was open
+ * aggregation.client.breaker.state     - gauge of the circuit breaker's state (0: closed, 1: half-open, 2: open)
+ * </pre>
+ * along with the response cache's standard cache.* meters (gets by result, puts, evictions, size), tagged cache=aggregation.client.cache.
+ * Every meter is resolved up front, so recording is a lock-free update vs a registry lookup.
+ */
+public class ClientMetrics {
+
+	private static final String PREFIX = "aggregation.client.";
+
+	private final MeterRegistry registry;
+	private final String resource;
+
+	private final Counter thresholdBatches, deadlineBatches;
+	private final DistributionSummary batchSize;
+	private final Timer successfulCalls, failedCalls;
+	private final DistributionSummary waiters;
+	private final Counter shed;
+	private final Counter hedges;
+	private final Counter retries;
+
+	/**
+	 * @param registry The registry to publish to; the global registry feeds the /actuator endpoints
+	 */
+	public ClientMetrics(String resource, MeterRegistry registry) {
+		this.registry = registry;
+		this.resource = resource;
+		thresholdBatches = batches("threshold");
+		deadlineBatches = batches("deadline");
+		batchSize = DistributionSummary.builder(PREFIX + "batch.size")
+				.description("IDs per component call")
+				.tag("resource", resource)
+				.publishPercentileHistogram()
+				.maximumExpectedValue(1000.0)
+				.register(registry);
+		successfulCalls = calls("success");
+		failedCalls = calls("error");
+		waiters = DistributionSummary.builder(PREFIX + "waiters")
+				.description("Aggregation responses awaiting each ID's data")
+				.tag("resource", resource)
+				.register(registry);
+		retries = Counter.builder(PREFIX + "retries")
+				.description("Batches resent after an earlier call for their IDs failed")
+				.tag("resource", resource)
+				.register(registry);
+		hedges = Counter.builder(PREFIX + "hedges")
+				.description("Duplicate calls made for batches slow to be answered")
+				.tag("resource", resource)
+				.register(registry);
+		shed = Counter.builder(PREFIX + "shed")
+				.description("IDs answered with null data without a component call")
+				.tag("resource", resource)
+				.register(registry);
+	}
+
+	/**
+	 * @return Metrics published via the global registry, and so the /actuator endpoints
+	 */
+	public static ClientMetrics forResource(String resource) {
+		return new ClientMetrics(resource, Metrics.globalRegistry);
+	}
+
+	private Counter batches(String reason) {
+		return Counter.builder(PREFIX + "batches")
+				.description("Component calls made, by what triggered them")
+				.tags("resource", resource, "reason", reason)
+				.register(registry);
+	}
+
+	private Timer calls(String outcome) {
+		return Timer.builder(PREFIX + "calls")
+				.description("Component call latency")
+				.tags("resource", resource, "outcome", outcome)
+				.publishPercentileHistogram()
+				.minimumExpectedValue(Duration.ofMillis(1))
+				.maximumExpectedValue(Duration.ofSeconds(30))
+				.register(registry);
+	}
+
+	/**
+	 * Publishes gauges sampling the client's state whenever metrics are scraped;
+	 * the registry only holds them weakly, so they live as long as the client.
+	 */
+	void monitor(RequestQueue queue, AtomicInteger inFlightBatches) {
+		Gauge.builder(PREFIX + "queue.depth", queue, RequestQueue::size)
+				.description("IDs queued awaiting a batch")
+				.tag("resource", resource)
+				.register(registry);
+		Gauge.builder(PREFIX + "inflight.ids", queue, RequestQueue::inFlightSize)
+				.description("IDs awaiting a component response")
+				.tag("resource", resource)
+				.register(registry);
+		Gauge.builder(PREFIX + "inflight.batches", inFlightBatches, AtomicInteger::get)
+				.description("Batches awaiting a component response")
+				.tag("resource", resource)
+				.register(registry);
+	}
+
+	/**
+	 * Publishes a gauge of the (possibly adaptive) concurrency limit, which (like the other gauges) lives as long as the client
+	 */
+	void monitor(ConcurrencyLimit limit) {
+		Gauge.builder(PREFIX + "inflight.limit", limit, ConcurrencyLimit::getLimit)
+				.description("The most batches currently allowed in flight")
+				.tag("resource", resource)
+				.register(registry);
+	}
+
+	/**
+	 * Publishes a gauge of the breaker's state, which (like the other gauges) lives as long as the client
+	 */
+	void monitor(CircuitBreaker breaker) {
+		Gauge.builder(PREFIX + "breaker.state", breaker, b -> b.getState().ordinal())
+				.description("Circuit breaker state (0: closed, 1: half-open, 2: open)")
+				.tag("resource", resource)
+				.register(registry);
+	}
+
+	/**
+	 * Publishes the response cache's statistics, if it is enabled, which (like the gauges) live as long as the client
+	 */
+	void monitor(ResponseCache cache) {
+		cache.monitor(registry, PREFIX + "cache", resource);
+	}
+
+	/**
+	 * @param size The number of IDs in the batch sent
+	 * @param onDeadline Whether the batch was sent because its delay expired, vs the queue reaching the batch size
+	 */
+	void recordBatch(int size, boolean onDeadline) {
+		(onDeadline ? deadlineBatches : thresholdBatches).increment();
+		batchSize.record(size);
+	}
+
+	void recordCall(long latencyNanos, boolean success) {
+		(success ? successfulCalls : failedCalls).record(latencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	void recordWaiters(int count) {
+		waiters.record(count);
+	}
+
+	void recordRetry() {
+		retries.increment();
+	}
+
+	void recordHedge() {
+		hedges.increment();
+	}
+
+	void recordShed(int ids) {
+		shed.increment(ids);
+	}
+}
@@ -0,0 +1,68 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.Properties;
+
+/**
+ * Access to the System Properties used to tune the component clients, e.g. <pre>-Dclient.pricing.batch.size=10</pre>
+ *
+ * Each setting can be given per resource as <pre>client.{resource}.{key}</pre>
+ * or for all resources as <pre>client.{key}</pre>, with the former taking precedence.
+ */
+public final class ClientProperties {
+
+	private static final String PREFIX = "client.";
+
+	private ClientProperties() {
+	}
+
+	/**
+	 * @return The raw property value for the resource, falling back to the all-resource setting, else null
+	 */
+	public static String get(String resource, String key) {
+		Properties props = System.getProperties();
+		String value = props.getProperty(PREFIX + resource + "." + key);
+		return value != null ? value : props.getProperty(PREFIX + key);
+	}
+
+	public static int getInt(String resource, String key, int defaultValue) {
+		String value = get(resource, key);
+		return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+	}
+
+	public static long getLong(String resource, String key, long defaultValue) {
+		String value = get(resource, key);
+		return value != null ? Long.parseLong(value.trim()) : defaultValue;
+	}
+
+	public static boolean getBoolean(String resource, String key, boolean defaultValue) {
+		String value = get(resource, key);
+		return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+	}
+
+	public static double getDouble(String resource, String key, double defaultValue) {
+		String value = get(resource, key);
+		return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+	}
+
+	/**
+	 * @return The raw all-resource property value, else null; for settings that aren't resource-specific (e.g. connection pools)
+	 */
+	public static String get(String key) {
+		return System.getProperty(PREFIX + key);
+	}
+
+	public static int getInt(String key, int defaultValue) {
+		String value = get(key);
+		return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+	}
+
+	public static long getLong(String key, long defaultValue) {
+		String value = get(key);
+		return value != null ? Long.parseLong(value.trim()) : defaultValue;
+	}
+
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = get(key);
+		return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+	}
+}
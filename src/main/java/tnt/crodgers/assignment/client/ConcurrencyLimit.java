@@ -0,0 +1,59 @@
+package tnt.crodgers.assignment.client;
+
+import lombok.ToString;
+
+/**
+ * Bounds how many batches a {@link QueueBackedClient} may have awaiting a component response at once;
+ * batches beyond the limit remain queued until a response frees up a slot.
+ *
+ * Configured per resource via {@link ClientProperties}:
+ * <pre>
+ * client.{resource}.batch.max.inflight - the limit, or initial limit if adaptive, 0 meaning no limit (default 10)
+ * client.{resource}.limit.adaptive     - whether to adjust the limit based on observed latency; see {@link GradientConcurrencyLimit}
+ * </pre>
+ */
+@ToString
+public class ConcurrencyLimit {
+
+	static final int DEFAULT_LIMIT = 10;
+
+	private final int limit;
+
+	/**
+	 * @param limit The most batches in flight at once, 0 meaning no limit
+	 */
+	public ConcurrencyLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Invalid concurrency limit: " + limit);
+		}
+		this.limit = limit == 0 ? Integer.MAX_VALUE : limit;
+	}
+
+	/**
+	 * @param resource The resource whose System Property configuration to apply
+	 * @param limit The configured (initial) limit
+	 * @return The configured limit for the resource
+	 */
+	static ConcurrencyLimit forResource(String resource, int limit) {
+		if (ClientProperties.getBoolean(resource, "limit.adaptive", false)) {
+			return GradientConcurrencyLimit.forResource(resource, limit);
+		}
+		return new ConcurrencyLimit(limit);
+	}
+
+	/**
+	 * @return The most batches that may currently be in flight
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Feedback hook for completed component calls; ignored by the fixed limit.
+	 * @param latencyNanos The time taken for the call to respond
+	 * @param inFlight The number of batches in flight when it responded, itself included
+	 * @param success Whether the call returned usable data
+	 */
+	public void record(long latencyNanos, int inFlight, boolean success) {
+	}
+}
@@ -0,0 +1,99 @@
+package tnt.crodgers.assignment.client;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * The HTTP clients (and their connection pools) used to call the component Services, shared per downstream host
+ * so that clients for resources served by the same host draw on one pool, vs each establishing their own connections.
+ *
+ * Since pools are per host rather than per resource, they are configured for all resources via {@link ClientProperties}:
+ * <pre>
+ * client.pool.max.connections   - the most connections open to each host (default 100)
+ * client.pool.pending.max       - the most calls that may wait for a connection, beyond which calls fail fast (default 1000)
+ * client.pool.pending.timeout.ms - the longest a call waits for a connection (default 5000)
+ * client.pool.max.idle.ms       - how long a connection may sit idle before being closed (default 30000)
+ * client.pool.max.life.ms       - how long a connection may be used before being replaced, 0 meaning indefinitely (default 0)
+ * client.pool.evict.interval.ms - how often idle/expired connections are closed in the background, 0 meaning only on acquire (default 10000)
+ * client.pool.lifo              - whether to reuse the most recently released connection (keeping the rest idle so they can be evicted)
+ *                                 vs the least recently released (default true)
+ * client.http2                  - whether to multiplex calls over cleartext HTTP/2 (h2c), upgrading from HTTP/1.1 where
+ *                                 the host supports it (default false)
+ * </pre>
+ * Pool usage is published as Micrometer metrics (reactor.netty.connection.provider.*).
+ */
+@Slf4j
+public final class ConnectionPools {
+
+	static final int DEFAULT_MAX_CONNECTIONS = 100;
+	static final int DEFAULT_PENDING_MAX = 1000;
+	static final long DEFAULT_PENDING_TIMEOUT_MS = 5000;
+	static final long DEFAULT_MAX_IDLE_MS = 30000;
+	static final long DEFAULT_MAX_LIFE_MS = 0;
+	static final long DEFAULT_EVICT_INTERVAL_MS = 10000;
+
+	private static final int CONNECT_TIMEOUT_MS = 5000;
+
+	private static final Map<String, HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+	private ConnectionPools() {
+	}
+
+	/**
+	 * @param baseUrl The URL of the component Service(s) to call
+	 * @param responseTimeout The longest to wait for a response
+	 * @return The HTTP client for the URL's host, created on first use
+	 */
+	public static HttpClient forUrl(String baseUrl, Duration responseTimeout) {
+		return CLIENTS.computeIfAbsent(hostOf(baseUrl), host -> create(host, responseTimeout));
+	}
+
+	/**
+	 * @return The URL's scheme, host and port, which together identify the connections it can share
+	 */
+	static String hostOf(String baseUrl) {
+		URI uri = URI.create(baseUrl);
+		int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+		return uri.getScheme() + "://" + uri.getHost() + ":" + port;
+	}
+
+	private static HttpClient create(String host, Duration responseTimeout) {
+		ConnectionProvider.Builder pool = ConnectionProvider.builder("component-" + host.replaceAll("\\W+", "-"))
+				.maxConnections(ClientProperties.getInt("pool.max.connections", DEFAULT_MAX_CONNECTIONS))
+				.pendingAcquireMaxCount(ClientProperties.getInt("pool.pending.max", DEFAULT_PENDING_MAX))
+				.pendingAcquireTimeout(Duration.ofMillis(ClientProperties.getLong("pool.pending.timeout.ms", DEFAULT_PENDING_TIMEOUT_MS)))
+				.maxIdleTime(Duration.ofMillis(ClientProperties.getLong("pool.max.idle.ms", DEFAULT_MAX_IDLE_MS)))
+				.metrics(true);
+		long maxLifeMs = ClientProperties.getLong("pool.max.life.ms", DEFAULT_MAX_LIFE_MS);
+		if (maxLifeMs > 0) {
+			pool.maxLifeTime(Duration.ofMillis(maxLifeMs));
+		}
+		long evictIntervalMs = ClientProperties.getLong("pool.evict.interval.ms", DEFAULT_EVICT_INTERVAL_MS);
+		if (evictIntervalMs > 0) {
+			pool.evictInBackground(Duration.ofMillis(evictIntervalMs));
+		}
+		if (ClientProperties.getBoolean("pool.lifo", true)) {
+			pool.lifo();
+		} else {
+			pool.fifo();
+		}
+		ConnectionProvider provider = pool.build();
+
+		HttpClient client = HttpClient.create(provider)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS)
+				.responseTimeout(responseTimeout);
+		if (ClientProperties.getBoolean("http2", false)) {
+			client = client.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+		}
+		log.info("Connecting to {} via {}", host, provider);
+		return client;
+	}
+}
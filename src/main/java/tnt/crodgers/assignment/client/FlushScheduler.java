@@ -0,0 +1,159 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deadline scheduler shared by all {@link QueueBackedClient} instances,
+ * used to flush partially-filled batches once they have been waiting too long.
+ *
+ * A single daemon thread services every deadline, so arming and cancelling a deadline
+ * is a cheap heap operation rather than the creation/destruction of a thread (as per java.util.Timer).
+ * Flush tasks are expected to be non-blocking since they share that thread.
+ *
+ * The shared scheduler's churn is published via the global registry, tagged with the scheduler's name:
+ * <pre>
+ * aggregation.scheduler.threads   - counter of threads created to service deadlines
+ * aggregation.scheduler.scheduled - counter of deadlines armed
+ * aggregation.scheduler.cancelled - counter of deadlines cancelled before they expired
+ * aggregation.scheduler.fired     - counter of deadlines that expired, running their task
+ * aggregation.scheduler.pending   - gauge of deadlines (and periodic tasks) currently armed
+ * </pre>
+ */
+@Slf4j
+public class FlushScheduler {
+
+	private static final String PREFIX = "aggregation.scheduler.";
+
+	private static final FlushScheduler SHARED = new FlushScheduler("batch-flush").monitor(Metrics.globalRegistry);
+
+	private final String name;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	/** Churn statistics, so the cost of deadline management can be observed */
+	private final AtomicLong threadsCreated = new AtomicLong();
+	private final AtomicLong scheduled = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong fired = new AtomicLong();
+
+	protected FlushScheduler(String name) {
+		this.name = name;
+		executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + threadsCreated.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// Cancelled deadlines are the norm (most batches fill before they expire), so don't let them accumulate
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * @return The scheduler shared by all clients
+	 */
+	public static FlushScheduler shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Publishes the churn statistics, sampled whenever metrics are scraped;
+	 * the registry only holds them weakly, so they live as long as the scheduler.
+	 * @return This instance
+	 */
+	FlushScheduler monitor(MeterRegistry registry) {
+		counter(registry, "threads", "Threads created to service deadlines", threadsCreated);
+		counter(registry, "scheduled", "Deadlines armed", scheduled);
+		counter(registry, "cancelled", "Deadlines cancelled before they expired", cancelled);
+		counter(registry, "fired", "Deadlines that expired, running their task", fired);
+		Gauge.builder(PREFIX + "pending", this, FlushScheduler::getPendingCount)
+				.description("Deadlines (and periodic tasks) currently armed")
+				.tag("scheduler", name)
+				.register(registry);
+		return this;
+	}
+
+	private void counter(MeterRegistry registry, String meter, String description, AtomicLong count) {
+		FunctionCounter.builder(PREFIX + meter, count, AtomicLong::get)
+				.description(description)
+				.tag("scheduler", name)
+				.register(registry);
+	}
+
+	/**
+	 * @param task The (non-blocking) task to run once the deadline expires
+	 * @param delayMs How long from now the deadline expires
+	 * @return The handle used to {@link #cancel(ScheduledFuture)} the deadline
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+		scheduled.incrementAndGet();
+		return executor.schedule(() -> {
+			fired.incrementAndGet();
+			runGuarded(task);
+		}, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs a task periodically until cancelled, e.g. the {@link MicroBatchTicker}'s ticks;
+	 * these are not counted amongst the deadlines
+	 * @param task The (non-blocking) task to run on each tick
+	 * @param initialDelayMs How long from now the first tick is
+	 * @param periodMs The time between ticks
+	 * @return The handle used to {@link #cancel(ScheduledFuture)} the ticks
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelayMs, long periodMs) {
+		// A periodic task that throws is never run again, hence the guard
+		return executor.scheduleAtFixedRate(() -> runGuarded(task), initialDelayMs, periodMs, TimeUnit.MILLISECONDS);
+	}
+
+	private static void runGuarded(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			// Don't let one misbehaving task take out the thread every client depends upon
+			log.error("Flush task failed", e);
+		}
+	}
+
+	/**
+	 * @param deadline The deadline to cancel, if it has not already expired
+	 */
+	public void cancel(ScheduledFuture<?> deadline) {
+		// An expired deadline may be cancelling itself from within its own task, which is a no-op
+		if (deadline.getDelay(TimeUnit.NANOSECONDS) > 0 && deadline.cancel(false)) {
+			cancelled.incrementAndGet();
+		}
+	}
+
+	/** @return The number of threads ever created to service deadlines */
+	public long getThreadsCreated() {
+		return threadsCreated.get();
+	}
+
+	/** @return The number of deadlines ever armed */
+	public long getScheduledCount() {
+		return scheduled.get();
+	}
+
+	/** @return The number of deadlines cancelled before they expired */
+	public long getCancelledCount() {
+		return cancelled.get();
+	}
+
+	/** @return The number of deadlines that expired, running their task */
+	public long getFiredCount() {
+		return fired.get();
+	}
+
+	/** @return The number of deadlines currently armed */
+	public int getPendingCount() {
+		return executor.getQueue().size();
+	}
+}
@@ -0,0 +1,99 @@
+package tnt.crodgers.assignment.client;
+
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Concurrency limit that finds the component Service's throughput knee by comparing each call's latency against
+ * the long-term average: whilst latency holds steady the limit grows (by roughly its square root per call),
+ * and as calls start queueing inside the component, so latency climbs, the limit shrinks in proportion (gradient style).
+ * Failed calls cut the limit multiplicatively, as the strongest sign of overload.
+ * So a spike is held back in the client's queue, to be batched further, rather than piling onto a struggling Service.
+ *
+ * Configured per resource via {@link ClientProperties}, in addition to those of {@link ConcurrencyLimit}:
+ * <pre>
+ * client.{resource}.limit.min       - the lowest the limit may fall (default 1)
+ * client.{resource}.limit.max       - the highest the limit may rise (default 100)
+ * client.{resource}.limit.tolerance - how far latency may rise above its long-term average before the limit is cut (default 1.5)
+ * </pre>
+ */
+@Slf4j
+@ToString
+public class GradientConcurrencyLimit extends ConcurrencyLimit {
+
+	static final int DEFAULT_MIN_LIMIT = 1;
+	static final int DEFAULT_MAX_LIMIT = 100;
+	static final double DEFAULT_TOLERANCE = 1.5;
+
+	/** Weight given to each new limit calculated */
+	private static final double SMOOTHING = 0.2;
+
+	/** Weight given to each call in the long-term latency average, i.e. roughly the last 100 calls */
+	private static final double LONG_TERM_SMOOTHING = 0.01;
+
+	/** The factor applied to the limit on a failed call */
+	private static final double BACKOFF = 0.9;
+
+	private final int minLimit, maxLimit;
+	private final double tolerance;
+
+	private double estimate;
+	private double longTermNanos;
+
+	/** The current limit, recalculated as calls complete so reads are cheap */
+	private volatile int currentLimit;
+
+	public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+		super(initialLimit);
+		if (minLimit < 1 || maxLimit < minLimit || tolerance < 1) {
+			throw new IllegalArgumentException("Invalid adaptive concurrency limit: min=" + minLimit + ", max=" + maxLimit
+					+ ", tolerance=" + tolerance);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.estimate = Math.max(minLimit, Math.min(maxLimit, super.getLimit()));
+		this.currentLimit = (int) estimate;
+	}
+
+	static GradientConcurrencyLimit forResource(String resource, int initialLimit) {
+		return new GradientConcurrencyLimit(initialLimit,
+				ClientProperties.getInt(resource, "limit.min", DEFAULT_MIN_LIMIT),
+				ClientProperties.getInt(resource, "limit.max", DEFAULT_MAX_LIMIT),
+				ClientProperties.getDouble(resource, "limit.tolerance", DEFAULT_TOLERANCE));
+	}
+
+	@Override
+	public int getLimit() {
+		return currentLimit;
+	}
+
+	@Override
+	public synchronized void record(long latencyNanos, int inFlight, boolean success) {
+		if (!success) {
+			update(estimate * BACKOFF);
+			return;
+		}
+		longTermNanos = longTermNanos == 0 ? latencyNanos : longTermNanos + LONG_TERM_SMOOTHING * (latencyNanos - longTermNanos);
+		if (longTermNanos > 2.0 * latencyNanos) {
+			// Latency has fallen well below the average (e.g. after a spike), so let the average catch up
+			longTermNanos *= 0.95;
+		}
+		if (inFlight < estimate / 2) {
+			// The limit isn't what's holding calls back, so latency says nothing about whether it could be higher
+			return;
+		}
+		double gradient = Math.max(0.5, Math.min(1.0, tolerance * longTermNanos / Math.max(1, latencyNanos)));
+		double target = estimate * gradient + Math.sqrt(estimate);
+		update(estimate + SMOOTHING * (target - estimate));
+	}
+
+	private void update(double newEstimate) {
+		estimate = Math.max(minLimit, Math.min(maxLimit, newEstimate));
+		int newLimit = (int) estimate;
+		if (newLimit != currentLimit) {
+			log.debug("Concurrency limit now {} (long-term latency {}ms)", newLimit, Math.round(longTermNanos / 1e6));
+			currentLimit = newLimit;
+		}
+	}
+}
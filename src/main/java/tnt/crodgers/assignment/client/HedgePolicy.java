@@ -0,0 +1,147 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.Arrays;
+
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Determines when a {@link QueueBackedClient} hedges a slow batch, i.e. sends a duplicate component call and takes
+ * whichever answers first: once the batch has been in flight for longer than a percentile of recently observed latency.
+ * So a batch stuck behind one slow component instance no longer holds up every aggregation response sharing its IDs.
+ *
+ * Hedges are paid for from a budget that each answered batch tops up by a fraction of a hedge,
+ * so hedging adds at most that fraction of extra calls even if the component slows down across the board.
+ *
+ * Configured per resource via {@link ClientProperties}:
+ * <pre>
+ * client.{resource}.hedge.enabled        - whether to hedge slow batches (default false)
+ * client.{resource}.hedge.percentile     - the percentile of recent latency after which a batch is hedged (default 95)
+ * client.{resource}.hedge.budget.percent - the most hedges to make, as a percentage of calls (default 10)
+ * client.{resource}.hedge.min.delay.ms   - the least time to wait before hedging, however fast recent calls were (default 10)
+ * </pre>
+ */
+@Slf4j
+@ToString(onlyExplicitlyIncluded = true)
+public class HedgePolicy {
+
+	static final double DEFAULT_PERCENTILE = 95;
+	static final int DEFAULT_BUDGET_PERCENT = 10;
+	static final long DEFAULT_MIN_DELAY_MS = 10;
+
+	/** The number of most recent latencies from which the percentile is taken */
+	private static final int WINDOW = 200;
+
+	/** The fewest latencies observed before hedging begins */
+	private static final int MIN_SAMPLES = 20;
+
+	/** How many calls between recalculations of the percentile, which means sorting the window */
+	private static final int RECALCULATE_EVERY = 20;
+
+	/** The most hedges that can be saved up, so a quiet period can't fund a burst of them */
+	private static final double MAX_BUDGET = 10;
+
+	private static final HedgePolicy DISABLED = new HedgePolicy(DEFAULT_PERCENTILE, 0, DEFAULT_MIN_DELAY_MS) {
+		@Override
+		public long getDelayMs() {
+			return -1;
+		}
+
+		@Override
+		public void recordLatency(long latencyMs) {
+		}
+	};
+
+	@ToString.Include
+	private final double percentile;
+	@ToString.Include
+	private final int budgetPercent;
+	@ToString.Include
+	private final long minDelayMs;
+
+	private final long[] window = new long[WINDOW];
+	private int next, recorded, sinceRecalculation;
+
+	/** Hedges that may currently be made */
+	private double budget;
+
+	/** The current delay, recalculated as latencies are recorded so reads are cheap; -1 until enough are */
+	private volatile long delayMs = -1;
+
+	public HedgePolicy(double percentile, int budgetPercent, long minDelayMs) {
+		if (percentile <= 0 || percentile >= 100 || budgetPercent < 0 || minDelayMs < 0) {
+			throw new IllegalArgumentException("Invalid hedge policy: percentile=" + percentile + ", budget=" + budgetPercent
+					+ "%, min delay=" + minDelayMs);
+		}
+		this.percentile = percentile;
+		this.budgetPercent = budgetPercent;
+		this.minDelayMs = minDelayMs;
+	}
+
+	/**
+	 * @return A policy that never hedges
+	 */
+	public static HedgePolicy disabled() {
+		return DISABLED;
+	}
+
+	/**
+	 * @param resource The resource whose System Property configuration to apply
+	 * @return The configured policy for the resource
+	 */
+	public static HedgePolicy forResource(String resource) {
+		if (!ClientProperties.getBoolean(resource, "hedge.enabled", false)) {
+			return DISABLED;
+		}
+		return new HedgePolicy(
+				ClientProperties.getDouble(resource, "hedge.percentile", DEFAULT_PERCENTILE),
+				ClientProperties.getInt(resource, "hedge.budget.percent", DEFAULT_BUDGET_PERCENT),
+				ClientProperties.getLong(resource, "hedge.min.delay.ms", DEFAULT_MIN_DELAY_MS));
+	}
+
+	/**
+	 * @return How long a batch may be in flight before it is hedged, or -1 if it shouldn't be
+	 */
+	public long getDelayMs() {
+		return delayMs;
+	}
+
+	/**
+	 * Feedback hook for completed component calls, which also tops up the hedge budget
+	 * @param latencyMs The time taken for a batch to be answered
+	 */
+	public synchronized void recordLatency(long latencyMs) {
+		budget = Math.min(MAX_BUDGET, budget + budgetPercent / 100.0);
+		window[next] = latencyMs;
+		next = (next + 1) % WINDOW;
+		recorded = Math.min(WINDOW, recorded + 1);
+		if (recorded >= MIN_SAMPLES && (delayMs < 0 || ++sinceRecalculation >= RECALCULATE_EVERY)) {
+			sinceRecalculation = 0;
+			long[] sorted = Arrays.copyOf(window, recorded);
+			Arrays.sort(sorted);
+			long newDelay = Math.max(minDelayMs, sorted[(int) Math.ceil(percentile / 100 * recorded) - 1]);
+			if (newDelay != delayMs) {
+				log.debug("Hedging after {}ms", newDelay);
+				delayMs = newDelay;
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the budget allows a hedge, which it is then charged for
+	 */
+	public synchronized boolean tryHedge() {
+		if (budget < 1) {
+			return false;
+		}
+		budget--;
+		return true;
+	}
+
+	/**
+	 * Returns the charge for a hedge granted by {@link #tryHedge()} but not made, e.g. as the batch was answered meanwhile
+	 */
+	public synchronized void refund() {
+		budget = Math.min(MAX_BUDGET, budget + 1);
+	}
+}
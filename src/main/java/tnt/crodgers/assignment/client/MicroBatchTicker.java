@@ -0,0 +1,117 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A cadence shared by the {@link QueueBackedClient}s on which they all flush whatever they have queued,
+ * so the component calls for the same aggregation requests' IDs are made together at the next tick,
+ * vs each client flushing on its own batch delay and the last of them deciding when the aggregation can complete.
+ * A batch that fills is still sent straight away, and a caller's deadline can still bring a client's flush forward.
+ *
+ * Since the cadence is shared, it is configured for all resources via {@link ClientProperties}:
+ * <pre>
+ * client.batch.tick.ms - how often every client flushes its queue, 0 meaning each flushes on its own batch delay (default 0)
+ * </pre>
+ */
+@Slf4j
+public class MicroBatchTicker {
+
+	static final long DEFAULT_TICK_MS = 0;
+
+	private static final MicroBatchTicker DISABLED = new MicroBatchTicker(FlushScheduler.shared(), 0);
+
+	private static final MicroBatchTicker SHARED = forProperties();
+
+	private final FlushScheduler scheduler;
+
+	private final long tickMs;
+
+	/** The flushes to run on each tick, one per registered client */
+	private final List<Runnable> flushes = new CopyOnWriteArrayList<>();
+
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	/** The ticker's epoch, as per {@link System#nanoTime()}, from which its ticks are timed */
+	private final long startNanos = System.nanoTime();
+
+	/**
+	 * @param scheduler The scheduler whose thread the ticks run on
+	 * @param tickMs The period between ticks, 0 meaning never to tick
+	 */
+	public MicroBatchTicker(FlushScheduler scheduler, long tickMs) {
+		if (tickMs < 0) {
+			throw new IllegalArgumentException("Invalid tick: " + tickMs + "ms");
+		}
+		this.scheduler = scheduler;
+		this.tickMs = tickMs;
+	}
+
+	/**
+	 * @return A ticker that never ticks, leaving each client to flush on its own batch delay
+	 */
+	public static MicroBatchTicker disabled() {
+		return DISABLED;
+	}
+
+	/**
+	 * @return The ticker configured via System Properties, shared by all clients
+	 */
+	public static MicroBatchTicker shared() {
+		return SHARED;
+	}
+
+	private static MicroBatchTicker forProperties() {
+		long tickMs = ClientProperties.getLong("batch.tick.ms", DEFAULT_TICK_MS);
+		return tickMs > 0 ? new MicroBatchTicker(FlushScheduler.shared(), tickMs) : DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return tickMs > 0;
+	}
+
+	public long getTickMs() {
+		return tickMs;
+	}
+
+	/**
+	 * Adds a client's flush to those run on every tick, starting the ticks if this is the first
+	 * @param flush The (non-blocking) flush, which shares the scheduler's thread
+	 */
+	public void register(Runnable flush) {
+		if (!isEnabled()) {
+			return;
+		}
+		flushes.add(flush);
+		if (started.compareAndSet(false, true)) {
+			scheduler.scheduleAtFixedRate(this::tick, untilNextTickMs(), tickMs);
+			log.info("Flushing client queues every {}ms", tickMs);
+		}
+	}
+
+	/**
+	 * @return The time until the next tick, or {@link Long#MAX_VALUE} if the ticker never ticks
+	 */
+	public long untilNextTickMs() {
+		if (!isEnabled()) {
+			return Long.MAX_VALUE;
+		}
+		long sinceStartMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		return tickMs - sinceStartMs % tickMs;
+	}
+
+	private void tick() {
+		for (Runnable flush : flushes) {
+			try {
+				flush.run();
+			} catch (RuntimeException e) {
+				// Don't let one client's failure hold back the others' calls
+				log.error("Tick flush failed", e);
+			}
+		}
+	}
+}
@@ -1,52 +1,190 @@
 package tnt.crodgers.assignment.client;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.RawValue;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
 import tnt.crodgers.assignment.service.aggregation.AggregationResponse;
 
 /**
  * Client wrapper that buffers incoming requests, making a single client request when:
- * 	- BUFFERED_REQUEST_SIZE different IDs are pending
+ * 	- the {@link BatchPolicy}'s batch size of different IDs are pending
  *  or 
- *  - MAX_REQUEST_DELAY_MS has passed since the buffer was initially (re)populated 
+ *  - the {@link BatchPolicy}'s delay has passed since the buffer was initially (re)populated 
+ * with the latter deadline being tracked via the {@link FlushScheduler} shared by all instances,
+ * or replaced by the ticks of a {@link MicroBatchTicker} shared by all instances, if configured.
  */
 @Slf4j
 public class QueueBackedClient implements ResponseHandler {
 
+	static final int DEFAULT_MAX_QUEUED = 10000;
+
+	/** Shared across all clients since it is thread-safe and expensive to (re)build */
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	/** Reader for the structured (array/object) values within component responses */
+	private static final ObjectReader VALUE_READER = JSON.readerFor(Object.class);
+
 	/** The resource of the client we manage/buffer */
 	private final String resource;
+
+	/** The resource's slot in the aggregation responses, as per the {@link ResourceRegistry} */
+	private final int slot;
 	
 	/** The Client to be called subject to meeting buffering requirements */
 	protected final Client client;
 
+	/** Determines when queued requests are sent */
+	private final BatchPolicy policy;
+
 	/** Pending requests */
-	private RequestQueue queue = new RequestQueue();
+	private final RequestQueue queue;
+
+	/** Recently received data, used to answer requests without queueing them */
+	private final ResponseCache cache;
+
+	/**
+	 * Whether to pass component response values through as their raw JSON vs decoding them into Java objects,
+	 * configured via <pre>client.{resource}.raw</pre> (default false)
+	 */
+	private final boolean raw;
+
+	/**
+	 * Whether to log an unparsable component response body in full, vs its first {@link #LOGGED_BODY_PREFIX} bytes,
+	 * configured (as for the {@link Client}'s logging of every body) via <pre>client.{resource}.log.body</pre> (default false)
+	 */
+	private final boolean logBody;
+
+	/** How much of an unparsable response body is logged, unless logging bodies in full */
+	private static final int LOGGED_BODY_PREFIX = 256;
+
+	/**
+	 * The most IDs that may be queued, beyond which {@link #isSaturated()} so callers are turned away rather than queued,
+	 * configured via <pre>client.{resource}.queue.max</pre> (default 10000, 0 meaning no limit)
+	 */
+	private final int maxQueued;
 
 	/**
 	 * The response targets for requests we have made and are awaiting responses for,
 	 * keyed by the buffer's UUID to allow response matching. 
 	 */
-	private final Map<UUID, Map<String, Collection<AggregationResponse>>> inFlight = new HashMap<>();
+	private final Map<UUID, Batch> inFlight = new ConcurrentHashMap<>();
+
+	/** Determines how a failed batch is retried */
+	private final RetryPolicy retries;
 
-	/** Issue a request upon one or more requests being buffered this long */
-	private static final int MAX_REQUEST_DELAY_MS = 5000;
+	/** Determines when a slow batch is hedged with a duplicate call */
+	private final HedgePolicy hedging;
+
+	/** The number of batches awaiting a response, bounded by {@link BatchPolicy#getMaxInFlight()} */
+	private final AtomicInteger inFlightBatches = new AtomicInteger();
 
 	/** Used to ensure buffered requests don't languish indefinitely */
-	private Timer timer;
+	private final FlushScheduler scheduler;
+
+	/** Flushes every client's queue together, if enabled, in place of the batch delay */
+	private final MicroBatchTicker ticker;
+
+	/**
+	 * Set when a flush of the queued IDs fell due but was held back for want of an in-flight slot (or the breaker's probe),
+	 * so the next slot freed sends them (partial batch or not) vs waiting out another deadline
+	 */
+	private final AtomicBoolean overdue = new AtomicBoolean();
+
+	/** The deadline for flushing the currently queued requests, if any; only ever swapped via CAS */
+	private final AtomicReference<ScheduledFuture<?>> deadline = new AtomicReference<>();
+
+	private final ClientMetrics metrics;
+
+	/** Stops calls being made, and so waiters piling up, while the component is failing */
+	private final CircuitBreaker breaker;
+
+	/** Weight given to each new sample in the smoothed component latency */
+	private static final double LATENCY_SMOOTHING = 0.2;
+
+	/**
+	 * Smoothed component call latency, i.e. how long before a caller's deadline its IDs must be sent;
+	 * concurrent updates may lose a sample, which is immaterial to an estimate
+	 */
+	private volatile double expectedLatencyMs;
 	
+	/**
+	 * @param resource The resource to call, whose System Property configuration to apply
+	 */
 	public QueueBackedClient(String resource) {
-		this.resource = resource;
-		this.client = new Client(resource);
+		this(builder(resource, new Client(resource))
+				.policy(BatchPolicy.forResource(resource))
+				.cache(ResponseCache.forResource(resource))
+				.raw(ClientProperties.getBoolean(resource, "raw", false))
+				.metrics(ClientMetrics.forResource(resource))
+				.breaker(CircuitBreaker.forResource(resource))
+				.hedging(HedgePolicy.forResource(resource))
+				.retries(RetryPolicy.forResource(resource))
+				.ticker(MicroBatchTicker.shared()));
+	}
+
+	/**
+	 * @param client The component client to make the calls with
+	 * @return A builder of a client of the resource with the given collaborators, any not given being disabled,
+	 * 			vs configured as per the public constructor; for substituting them in tests and benchmarks
+	 */
+	static Builder builder(String resource, Client client) {
+		return new Builder(resource, client);
+	}
+
+	private QueueBackedClient(Builder builder) {
+		this.resource = builder.resource;
+		this.slot = ResourceRegistry.shared().slotOf(resource);
+		if (slot < 0) {
+			throw new IllegalArgumentException("Unregistered resource " + resource);
+		}
+		this.client = builder.client;
+		this.policy = builder.policy;
+		this.queue = new RequestQueue(policy);
+		this.cache = builder.cache;
+		this.raw = builder.raw;
+		this.scheduler = builder.scheduler;
+		// Recorded to a registry private to this instance, unless given one that publishes them
+		this.metrics = builder.metrics != null ? builder.metrics : new ClientMetrics(resource, new SimpleMeterRegistry());
+		this.breaker = builder.breaker;
+		this.hedging = builder.hedging;
+		this.retries = builder.retries;
+		this.ticker = builder.ticker;
+		this.logBody = ClientProperties.getBoolean(resource, "log.body", false);
+		int maxQueued = ClientProperties.getInt(resource, "queue.max", DEFAULT_MAX_QUEUED);
+		this.maxQueued = maxQueued > 0 ? maxQueued : Integer.MAX_VALUE;
+		metrics.monitor(queue, inFlightBatches);
+		metrics.monitor(policy.getConcurrencyLimit());
+		metrics.monitor(breaker);
+		metrics.monitor(cache);
+		log.info("{} batching with {}{}{}", resource, policy, ticker.isEnabled() ? ", flushing every " + ticker.getTickMs() + "ms" : "",
+				cache.isEnabled() ? ", caching for " + cache.getTtlMs() + "ms" : "");
+		ticker.register(this::tick);
 	}
 
 	/**
@@ -54,44 +192,320 @@ public class QueueBackedClient implements ResponseHandler {
 	 * @param response The response instance to populate with responses
 	 */
 	public void request(Set<String> qValues, AggregationResponse response) {
-		// Treat this as a single logical operation to ensure atomic timer and buffer maintenance
-		synchronized (this) {
-			queue.enqueue(qValues, response);
+		if (cache.isEnabled()) {
+			qValues = answerFromCache(qValues, response);
+			if (qValues.isEmpty()) {
+				return;
+			}
+		}
+
+		if (breaker.isRejecting()) {
+			// Don't queue behind a component that is failing; answer (with null data) straight away
+			metrics.recordShed(qValues.size());
+			response.reset(slot);
+			return;
+		}
+
+		policy.recordArrivals(qValues.size());
+		queue.enqueue(qValues, response);
+
+		log.debug("{} now pending: {}", resource, queue.size());
+		if (queue.hasReachedThreshold()) {
+			sendQueuedRequests(false);
+		} else {
+			scheduleFlush();
+		}
+	}
 
-			log.debug(resource + " now pending: " + queue.size());
-			if (queue.hasReachedThreshold()) {
-				sendQueuedRequests();
+	/**
+	 * Ensures the queued IDs will be sent in time: by the next tick if ticking, unless a caller's deadline requires sooner,
+	 * otherwise by their own deadline
+	 */
+	private void scheduleFlush() {
+		long delayMs = flushDelayMs();
+		if (delayMs < ticker.untilNextTickMs()) {
+			armDeadline(delayMs);
+		}
+	}
+
+	/**
+	 * Sends everything queued on the ticker's cadence, in step with the other clients
+	 */
+	private void tick() {
+		if (queue.size() > 0) {
+			log.debug("{} being requested on tick", resource);
+			sendQueuedRequests(true);
+		}
+	}
+
+	/**
+	 * @return Whether the queue is full, e.g. as the component is stalled, so new requests for it should be rejected
+	 * 			(by the caller, since request() must accept what it is given to keep its waiters answered)
+	 */
+	public boolean isSaturated() {
+		return queue.size() >= maxQueued;
+	}
+
+	/**
+	 * @return How long the queued IDs can remain queued: the batch delay, or less if the most urgent
+	 * 			waiting caller's deadline would otherwise pass before the component could respond
+	 */
+	private long flushDelayMs() {
+		long remainingMs = queue.earliestRemainingMs();
+		if (remainingMs == Long.MAX_VALUE) {
+			return policy.getDelayMs();
+		}
+		return Math.max(0, Math.min(policy.getDelayMs(), remainingMs - Math.round(expectedLatencyMs)));
+	}
+
+	/**
+	 * @return The IDs that could not be answered from the cache, and so still need requesting
+	 */
+	private Set<String> answerFromCache(Set<String> qValues, AggregationResponse response) {
+		Set<String> misses = new HashSet<>();
+		for (String id : qValues) {
+			Optional<Object> cached = cache.get(id);
+			if (cached != null) {
+				response.set(slot, id, cached.orElse(null));
+			} else {
+				misses.add(id);
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Ensures any queued IDs will be requested within the given delay, should their batch not fill in time;
+	 * an already-armed deadline is brought forward if need be, but never put back.
+	 */
+	private void armDeadline(long delayMs) {
+		while (queue.size() > 0) {
+			ScheduledFuture<?> current = deadline.get();
+			if (current != null && current.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+				// The queued IDs will already be sent soon enough
+				return;
+			}
+			ScheduledFuture<?> newDeadline = scheduler.schedule(() -> {
+				log.debug("{} being requested due to time out", resource);
+				// Clear the deadline first, so a fresh one can be armed for anything we can't send now;
+				// any other deadline armed meanwhile is redundant, since we're flushing now
+				ScheduledFuture<?> armed = deadline.getAndSet(null);
+				if (armed != null) {
+					scheduler.cancel(armed);
+				}
+				sendQueuedRequests(true);
+			}, delayMs);
+			if (deadline.compareAndSet(current, newDeadline)) {
+				if (current != null) {
+					scheduler.cancel(current);
+				}
+				log.debug("{} flush deadline armed for {}ms", resource, delayMs);
+				return;
 			}
+			// Another request beat us to it, so reconsider against its deadline
+			scheduler.cancel(newDeadline);
+		}
+	}
 
-			if (timer == null && queue.size() > 0) {
-				// No timer instance means no unmade requests were previously queued,
-				// so kick off a fresh timer to process the queued IDs if it doesn't fill in time.
-				final QueueBackedClient callback = this;
-				timer = new Timer(resource);
-				timer.schedule(new TimerTask() {
-					@Override
-					public void run() {
-						log.info(resource + " being requested due to time out");
-						synchronized (callback) {
-							callback.sendQueuedRequests();
-						}
-					}
-				}, MAX_REQUEST_DELAY_MS);
-				log.info(resource + " timer started");
+	/**
+	 * Sends the queued IDs as batches (or a single batch, if the policy doesn't drain the queue),
+	 * subject to the policy's limit on batches in flight; anything left over remains queued under a deadline.
+	 * @param includePartial Whether to send a final partially-filled batch, vs leaving it queued to fill up
+	 */
+	private void sendQueuedRequests(boolean includePartial) {
+		boolean sent = false, blocked = false;
+		while (queue.size() > 0 && (policy.isDrain() || !sent)
+				&& (includePartial || queue.hasReachedThreshold())) {
+			if (!acquireInFlightSlot()) {
+				log.debug("{} has {} batches in flight; leaving {} queued", resource, inFlightBatches.get(), queue.size());
+				blocked = true;
+				break;
 			}
+			long permit = breaker.tryAcquire();
+			if (permit == CircuitBreaker.NO_PERMIT) {
+				inFlightBatches.decrementAndGet();
+				if (breaker.isRejecting()) {
+					shedQueued();
+				} else {
+					// A probe call is outstanding, whose outcome decides the fate of what's queued
+					blocked = true;
+				}
+				break;
+			}
+			Map<String, Collection<AggregationResponse>> queued = queue.dequeue();
+			if (queued.isEmpty()) {
+				// A concurrent flush already claimed everything
+				inFlightBatches.decrementAndGet();
+				breaker.abandon(permit);
+				break;
+			}
+			metrics.recordBatch(queued.size(), includePartial);
+			send(new Batch(queued.keySet()), permit);
+			sent = true;
+		}
+
+		if (includePartial) {
+			overdue.set(blocked);
+		}
+		if (queue.size() == 0) {
+			overdue.set(false);
+			// Nothing left for the deadline to flush
+			ScheduledFuture<?> expired = deadline.getAndSet(null);
+			if (expired != null) {
+				scheduler.cancel(expired);
+			}
+		} else if (includePartial && blocked) {
+			// Held back by a call in flight (at the limit, or the breaker's probe), the first of which to free its slot
+			// sends the overdue IDs; re-arming the (passed) deadline meanwhile would only spin the scheduler's thread.
+			// Should the last of them have freed its slot before the IDs were marked overdue, fall back on the batch delay
+			if (inFlightBatches.get() == 0) {
+				armDeadline(policy.getDelayMs());
+			}
+		} else {
+			scheduleFlush();
 		}
 	}
-	
-	private void sendQueuedRequests() {
-		Map<String, Collection<AggregationResponse>> queued = queue.dequeue();
+
+	/**
+	 * Makes the component call for a batch, which holds an in-flight slot, arming its hedge if the policy calls for one
+	 * @param permit The circuit breaker's permit for the call
+	 */
+	private void send(Batch batch, long permit) {
+		batch.setPermit(permit);
+		final UUID uuid = UUID.randomUUID();
+		final String qValues = String.join(",", batch.getIds());
+		batch.expect(uuid);
+		inFlight.put(uuid, batch);
+		batch.made(uuid, client.call(qValues, this, uuid));
+		long hedgeDelayMs = hedging.getDelayMs();
+		if (hedgeDelayMs >= 0) {
+			batch.setHedge(scheduler.schedule(() -> hedge(batch, qValues), hedgeDelayMs));
+		}
+	}
+
+	/**
+	 * Retries the IDs of a failed batch that are still awaited, as two halves so that an ID which fails the component call
+	 * is soon isolated; once retries are exhausted the waiters get null data for the IDs that failed alone.
+	 * A batch isn't retried after a timeout, nor when its waiters' deadline would pass before the retry could be answered.
+	 */
+	private void retry(Batch batch) {
+		List<String> ids = new ArrayList<>(batch.getIds().size());
+		for (String id : batch.getIds()) {
+			// Any that were answered before the response proved unparsable don't need retrying
+			if (queue.isInFlight(id)) {
+				ids.add(id);
+			}
+		}
+		if (ids.isEmpty()) {
+			return;
+		}
+		int attempt = batch.getAttempt() + 1;
+		if (attempt > retries.getMaxRetries()) {
+			abandon(batch, ids);
+			return;
+		}
+		if (batch.isTimedOut()) {
+			// The component is (at best) slow, so a retry would likely time out too, adding to its load meanwhile
+			log.debug("{} not retrying {} after a response timeout", resource, ids);
+			abandon(batch, ids);
+			return;
+		}
+		int half = (ids.size() + 1) / 2;
+		for (List<String> part : ids.size() > 1 ? Arrays.asList(ids.subList(0, half), ids.subList(half, ids.size()))
+				: Collections.singletonList(ids)) {
+			long backoffMs = retries.getBackoffMs(attempt);
+			if (queue.earliestRemainingMs(part) < backoffMs + Math.round(expectedLatencyMs)) {
+				log.debug("{} not retrying {}, as its waiters' deadline would pass first", resource, part);
+				abandon(batch, part);
+				continue;
+			}
+			scheduler.schedule(() -> resend(new Batch(part, attempt)), backoffMs);
+		}
+	}
+
+	/**
+	 * Answers the waiters on IDs of a failed batch that won't be retried
+	 */
+	private void abandon(Batch batch, Collection<String> ids) {
+		if (batch.getAttempt() == 0) {
+			// Never retried, so for all we know the resource as a whole is missing
+			setNullValue(ids);
+			return;
+		}
+		// Narrowed down by retries, so only these IDs' data is missing, vs that of the IDs answered by the other retries
+		for (String id : ids) {
+			Collection<AggregationResponse> waiting = queue.complete(id);
+			if (waiting != null) {
+				for (AggregationResponse response : waiting) {
+					response.set(slot, id, null);
+				}
+			}
+		}
+	}
+
+	private void resend(Batch batch) {
+		long permit = breaker.tryAcquire();
+		if (permit == CircuitBreaker.NO_PERMIT) {
+			// Don't retry against a component that is failing wholesale (or being probed),
+			// but keep whatever the batch's other retries have delivered
+			abandon(batch, batch.getIds());
+			return;
+		}
+		// Retries are of IDs already admitted, so aren't held back by the in-flight limit, but do count towards it
+		inFlightBatches.incrementAndGet();
+		metrics.recordRetry();
+		log.debug("{} retry {} of {}", resource, batch.getAttempt(), batch.getIds());
+		send(batch, permit);
+	}
+
+	/**
+	 * Sends a duplicate call for a batch that has yet to be answered, budget permitting; whichever call answers first wins
+	 */
+	private void hedge(Batch batch, String qValues) {
+		if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+			// Don't add load to a component that is failing, nor duplicate the probe of one that may be recovering
+			log.debug("{} circuit breaker {}; not hedging {}", resource, breaker.getState(), qValues);
+			return;
+		}
+		if (!hedging.tryHedge()) {
+			log.debug("{} hedge budget exhausted; not hedging {}", resource, qValues);
+			return;
+		}
 		final UUID uuid = UUID.randomUUID();
-		inFlight.put(uuid, queued);
-		client.call(String.join(",", queued.keySet()), this, uuid);
-		
-		// Now that we've issued a request for some/all pending IDs, consider starting a fresh timer.
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
+		inFlight.put(uuid, batch);
+		if (!batch.expect(uuid)) {
+			// Answered just now, so the hedge won't be made after all
+			inFlight.remove(uuid);
+			hedging.refund();
+			return;
+		}
+		metrics.recordHedge();
+		if (!batch.made(uuid, client.call(qValues, this, uuid))) {
+			inFlight.remove(uuid);
+		}
+	}
+
+	private boolean acquireInFlightSlot() {
+		int current;
+		do {
+			current = inFlightBatches.get();
+			if (current >= policy.getMaxInFlight()) {
+				return false;
+			}
+		} while (!inFlightBatches.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Frees the in-flight slot held by a completed batch, sending any full batches that were held back for want of one,
+	 * or everything queued if its flush was already overdue
+	 */
+	private void releaseInFlightSlot() {
+		inFlightBatches.decrementAndGet();
+		if (overdue.get()) {
+			sendQueuedRequests(true);
+		} else if (queue.hasReachedThreshold()) {
+			sendQueuedRequests(false);
 		}
 	}
 
@@ -102,41 +516,255 @@ public class QueueBackedClient implements ResponseHandler {
 	 * @param ids the IDs for which data was requested, and is now (except in error cases) available
 	 * @param responseJson the response data from the client
 	 */
-	public void handleResponse(UUID callId, String ids, String responseJson) {
-		// Treat this as a single logical operation to ensure atomic inFlight maintenance
-		synchronized (this) {
-			Map<String, Collection<AggregationResponse>> waitingReponses = inFlight.get(callId);
-			if (waitingReponses == null) {
-				log.error(resource + " received response to unrecognised caller ID " + callId + "; ignoring");
-				return;
+	@Override
+	public void handleResponse(UUID callId, String ids, byte[] responseJson) {
+		// Claiming the call atomically means we can fan out without holding any lock
+		Batch batch = inFlight.remove(callId);
+		if (batch == null) {
+			log.error("{} received response to unrecognised caller ID {}; ignoring", resource, callId);
+			return;
+		}
+		if (!batch.settle(callId, responseJson != null)) {
+			log.debug("{} call {} superseded by another for the same batch", resource, callId);
+			return;
+		}
+		cancelOtherCalls(batch);
+		long latencyNanos = batch.getAgeNanos();
+		long latencyMs = latencyNanos / 1_000_000;
+		policy.recordLatency(latencyMs);
+		double expected = expectedLatencyMs;
+		expectedLatencyMs = expected == 0 ? latencyMs : expected + LATENCY_SMOOTHING * (latencyMs - expected);
+		try {
+			boolean success = dispatch(batch, responseJson);
+			metrics.recordCall(latencyNanos, success);
+			breaker.record(batch.getPermit(), latencyMs, success);
+			if (success) {
+				hedging.recordLatency(latencyMs);
 			}
-			if (responseJson == null) {
-				setNullValue(waitingReponses, ids);
-				return;
+			policy.getConcurrencyLimit().record(latencyNanos, inFlightBatches.get(), success);
+		} finally {
+			releaseInFlightSlot();
+		}
+		if (breaker.isRejecting()) {
+			// Having (just) tripped, answer what's queued now vs when its deadline would have flushed it
+			shedQueued();
+		}
+	}
+
+	@Override
+	public void handleTimeout(UUID callId, String ids) {
+		Batch batch = inFlight.get(callId);
+		if (batch != null) {
+			batch.setTimedOut(true);
+		}
+		handleResponse(callId, ids, (byte[]) null);
+	}
+
+	/**
+	 * Disarms the batch's hedge, and cancels any calls made for it other than the one that answered it
+	 */
+	private void cancelOtherCalls(Batch batch) {
+		ScheduledFuture<?> hedge = batch.getHedge();
+		if (hedge != null) {
+			scheduler.cancel(hedge);
+		}
+		for (Map.Entry<UUID, Disposable> loser : batch.losers().entrySet()) {
+			inFlight.remove(loser.getKey());
+			if (loser.getValue() != null) {
+				loser.getValue().dispose();
 			}
+		}
+	}
 
-			try {
-				Map<String, Object> responseData = 
-						new ObjectMapper().readValue(responseJson, new TypeReference<Map<String, Object>>(){});
+	/**
+	 * Answers every queued ID's waiters with null data, without calling the component
+	 */
+	private void shedQueued() {
+		Map<String, Collection<AggregationResponse>> queued;
+		while (!(queued = queue.dequeue()).isEmpty()) {
+			metrics.recordShed(queued.size());
+			setNullValue(queued.keySet());
+		}
+	}
+
+	/**
+	 * Passes the response data for each ID to the response(s) waiting on it,
+	 * including any that coalesced with the batch after it was sent.
+	 * @return Whether the component call succeeded, vs failing or returning an unparsable response
+	 */
+	private boolean dispatch(Batch batch, byte[] responseJson) {
+		if (responseJson == null) {
+			retry(batch);
+			return false;
+		}
+
+		try (JsonParser parser = JSON.getFactory().createParser(responseJson)) {
+			// Walk the response token by token, routing each ID's value straight to its waiters
+			// vs materialising the whole response as a Map first
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonParseException(parser, "Expected a JSON object");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String id = parser.getCurrentName();
+				parser.nextToken();
+				Collection<AggregationResponse> waiting = queue.complete(id);
+				if (waiting == null) {
+					log.warn("{} ignoring response data for unrequested ID {}", resource, id);
+					parser.skipChildren();
+					continue;
+				}
+				long start = parser.getTokenLocation().getByteOffset();
+				Object value = raw ? readRawValue(parser, responseJson) : readValue(parser);
+				// Having read the value, the parser's location is (about) the end of its JSON
+				cache.put(id, value, (int) (parser.getCurrentLocation().getByteOffset() - start));
+				metrics.recordWaiters(waiting.size());
+				for (AggregationResponse response : waiting) {
+					response.set(slot, id, value);
+				}
+			}
+		} catch (Exception e) {
+			if (logBody || responseJson.length <= LOGGED_BODY_PREFIX) {
+				log.error(resource + " - couldn't parse response [" + new String(responseJson, StandardCharsets.UTF_8) + "]", e);
+			} else {
+				// Bodies can be large, so unless asked for, only enough to identify the problem
+				log.error(resource + " - couldn't parse response of " + responseJson.length + " bytes ["
+						+ new String(responseJson, 0, LOGGED_BODY_PREFIX, StandardCharsets.UTF_8) + "...]", e);
+			}
+			retry(batch);
+			return false;
+		}
 
-				for (Map.Entry<String, Object> entry : responseData.entrySet()) {
-					for (AggregationResponse response : waitingReponses.get(entry.getKey())) {
-						response.set(resource, entry.getKey(), entry.getValue());
-					}
+		// Don't leave waiters hanging on IDs the component omitted from its response
+		for (String id : batch.getIds()) {
+			Collection<AggregationResponse> waiting = queue.complete(id);
+			if (waiting != null) {
+				for (AggregationResponse response : waiting) {
+					response.set(slot, id, null);
 				}
-			} catch (Exception e) {
-				log.error(resource + " - couldn't parse response [" + responseJson + "], returning null data", e);
-				setNullValue(waitingReponses, ids);
 			}
-			inFlight.remove(callId);
 		}
+		return true;
 	}
 
-	private void setNullValue(Map<String, Collection<AggregationResponse>> waitingResponses, String ids) {
-		for (String key : ids.split(",")) {
-			for (AggregationResponse response : waitingResponses.get(key)) {
-				response.reset(resource);
+	/**
+	 * @return The value at the parser's current token; scalars are read directly, only structured values being data-bound
+	 */
+	private static Object readValue(JsonParser parser) throws IOException {
+		switch (parser.currentToken()) {
+			case VALUE_NULL:
+				return null;
+			case VALUE_STRING:
+				return parser.getText();
+			case VALUE_TRUE:
+			case VALUE_FALSE:
+				return parser.getBooleanValue();
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				return parser.getNumberValue();
+			default:
+				return VALUE_READER.readValue(parser);
+		}
+	}
+
+	/**
+	 * @return The value at the parser's current token as a slice of the raw response JSON,
+	 * 			which is written out verbatim when the aggregation response is serialised
+	 */
+	private static Object readRawValue(JsonParser parser, byte[] json) throws IOException {
+		if (parser.currentToken() == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		int start = (int) parser.getTokenLocation().getByteOffset();
+		// Consume the whole value, so the parser's location is just beyond it
+		parser.skipChildren();
+		parser.finishToken();
+		int end = (int) parser.getCurrentLocation().getByteOffset();
+		return new RawValue(new String(json, start, end - start, StandardCharsets.UTF_8));
+	}
+
+	private void setNullValue(Collection<String> ids) {
+		for (String id : ids) {
+			Collection<AggregationResponse> waiting = queue.complete(id);
+			if (waiting != null) {
+				for (AggregationResponse response : waiting) {
+					response.reset(slot);
+				}
 			}
 		}
 	}
+
+	/**
+	 * Assembles a client from its collaborators, each defaulting to its disabled form
+	 * (the default policy, no cache, decoded values, the shared scheduler, private metrics, no breaker, hedges, retries or ticks)
+	 */
+	static final class Builder {
+		private final String resource;
+		private final Client client;
+		private BatchPolicy policy = BatchPolicy.defaults();
+		private ResponseCache cache = ResponseCache.disabled();
+		private boolean raw;
+		private FlushScheduler scheduler = FlushScheduler.shared();
+		private ClientMetrics metrics;
+		private CircuitBreaker breaker = CircuitBreaker.disabled();
+		private HedgePolicy hedging = HedgePolicy.disabled();
+		private RetryPolicy retries = RetryPolicy.disabled();
+		private MicroBatchTicker ticker = MicroBatchTicker.disabled();
+
+		private Builder(String resource, Client client) {
+			this.resource = resource;
+			this.client = client;
+		}
+
+		Builder policy(BatchPolicy policy) {
+			this.policy = policy;
+			return this;
+		}
+
+		Builder cache(ResponseCache cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/**
+		 * @param raw Whether to pass component response values through as their raw JSON, vs decoding them
+		 */
+		Builder raw(boolean raw) {
+			this.raw = raw;
+			return this;
+		}
+
+		Builder scheduler(FlushScheduler scheduler) {
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		Builder metrics(ClientMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		Builder breaker(CircuitBreaker breaker) {
+			this.breaker = breaker;
+			return this;
+		}
+
+		Builder hedging(HedgePolicy hedging) {
+			this.hedging = hedging;
+			return this;
+		}
+
+		Builder retries(RetryPolicy retries) {
+			this.retries = retries;
+			return this;
+		}
+
+		Builder ticker(MicroBatchTicker ticker) {
+			this.ticker = ticker;
+			return this;
+		}
+
+		QueueBackedClient build() {
+			return new QueueBackedClient(this);
+		}
+	}
 }
@@ -1,63 +1,218 @@
 package tnt.crodgers.assignment.client;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import tnt.crodgers.assignment.service.aggregation.AggregationResponse;
 
 /**
  * This class uses a queue to manage the IDs for which client requests are to be chunked up,
  * and a Map to manage the response(s) waiting on that component data to assemble the overarching Aggregation response.
- * Opted for composition over inheritance ("has a" vs "is a") to provide a tighter interface. 
+ * Opted for composition over inheritance ("has a" vs "is a") to provide a tighter interface.
+ *
+ * The queue is ordered by deadline rather than arrival: each queued ID is prioritised by the earliest deadline
+ * of the responses waiting on it (see {@link AggregationResponse#deadlineNanos()}), so batches are assembled from
+ * the most urgent IDs first. IDs whose waiters have no deadline are taken in arrival order, after those that do.
+ *
+ * IDs that have been dequeued remain tracked until {@link #complete(String)}d, so that requests for IDs already
+ * being fetched attach to that outstanding call rather than triggering a duplicate one.
+ *
+ * The queue is safe for concurrent use without external locking:
+ * each ID's waiters are only mutated within the (per-bin locked) atomic operations of a ConcurrentHashMap,
+ * and IDs are claimed for a batch by polling a lock-free (CAS-based) skip list,
+ * so enqueueing and dequeueing threads only contend when touching the same IDs.
  */
 public class RequestQueue {
-	/** Maps IDs to the response(s) waiting on response data for those IDs */ 
-	private final Map<String, Collection<AggregationResponse>> responseManager = new HashMap<>();
+	/** Maps queued IDs to their position in the queue, which also holds the response(s) waiting on their data */
+	private final Map<String, Pending> responseManager = new ConcurrentHashMap<>();
+
+	/** Maps IDs that have been dequeued, and so are being fetched, to the response(s) waiting on that data */
+	private final Map<String, Collection<AggregationResponse>> inFlight = new ConcurrentHashMap<>();
+
+	/** IDs waiting for a data request to be made, earliest deadline first */
+	private final NavigableSet<Pending> requestQueue = new ConcurrentSkipListSet<>();
+
+	/** Tracked separately since {@link ConcurrentSkipListSet#size()} is O(n) */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/** Orders IDs with the same deadline (including those with none) by arrival */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/** Determines the queue length at which we start issuing requests */
+	private final BatchPolicy policy;
+
+	public RequestQueue() {
+		this(BatchPolicy.defaults());
+	}
+
+	public RequestQueue(BatchPolicy policy) {
+		this.policy = policy;
+	}
 
-	/** FIFO queue of IDs waiting for a data request to be made */ 
-	private final LinkedList<String> requestQueue = new LinkedList<>();
-	
-	/** The queue length at which we start issuing requests */
-	private static final int QUEUE_THRESHOLD = 5;
-	
 	/**
 	 * @param qValues the IDs to issue request(s) for;
-	 * 					note that we don't grow the queue if the ID was already queued
-	 * @param response the response collector to send the eventual response fragment to  
+	 * 					note that we don't grow the queue if the ID was already queued or is in flight
+	 * @param response the response collector to send the eventual response fragment to
 	 */
 	public void enqueue(Set<String> qValues, AggregationResponse response) {
 		for (String id : qValues) {
-			if (!responseManager.containsKey(id)) {
-				requestQueue.add(id);
-				responseManager.put(id, new HashSet<>());
+			if (inFlight.computeIfPresent(id, (key, waiting) -> {
+				waiting.add(response);
+				return waiting;
+			}) != null) {
+				// Coalesced with the outstanding request for this ID
+				continue;
 			}
-			responseManager.get(id).add(response);
+
+			final long deadline = response.deadlineNanos();
+			responseManager.compute(id, (key, pending) -> {
+				if (pending == null) {
+					// Count first so that size() never under-reports what can be dequeued
+					size.incrementAndGet();
+					// Most IDs have a single waiter, and a response only asks for each ID once, so a list sized for one suffices
+					pending = new Pending(id, deadline, sequence.getAndIncrement(), new ArrayList<>(1));
+					requestQueue.add(pending);
+				} else if (deadline < pending.deadline && requestQueue.remove(pending)) {
+					// Re-prioritise by the more urgent waiter; if the removal failed, the ID is already being dequeued
+					pending = new Pending(id, deadline, pending.sequence, pending.waiting);
+					requestQueue.add(pending);
+				}
+				pending.waiting.add(response);
+				return pending;
+			});
 		}
 	}
 
 	public int size() {
-		return requestQueue.size();
+		return size.get();
 	}
 
 	public boolean hasReachedThreshold() {
-		return requestQueue.size() >= QUEUE_THRESHOLD;
+		return size() >= policy.getBatchSize();
+	}
+
+	/**
+	 * @return The time left until the earliest deadline of any queued ID's waiters (0 if passed),
+	 * 			or {@link Long#MAX_VALUE} if none of them has a deadline (or nothing is queued)
+	 */
+	public long earliestRemainingMs() {
+		Pending first;
+		try {
+			first = requestQueue.first();
+		} catch (NoSuchElementException e) {
+			return Long.MAX_VALUE;
+		}
+		if (first.deadline == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(first.deadline - System.nanoTime()));
+	}
+
+	/**
+	 * @param ids In-flight IDs, e.g. those of a failed batch
+	 * @return The time left until the earliest deadline of those IDs' waiters (0 if passed),
+	 * 			or {@link Long#MAX_VALUE} if none of them has a deadline (or none of the IDs is in flight)
+	 */
+	public long earliestRemainingMs(Collection<String> ids) {
+		final long[] earliest = {Long.MAX_VALUE};
+		for (String id : ids) {
+			// Read within the map's atomic operation, since enqueue() may be adding to the waiters meanwhile
+			inFlight.computeIfPresent(id, (key, waiting) -> {
+				for (AggregationResponse response : waiting) {
+					earliest[0] = Math.min(earliest[0], response.deadlineNanos());
+				}
+				return waiting;
+			});
+		}
+		if (earliest[0] == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(earliest[0] - System.nanoTime()));
 	}
 
 	/**
-	 * @return The first n={@link #QUEUE_THRESHOLD} items in the queue,
+	 * Claims a batch of IDs, which are then considered in flight until {@link #complete(String)}d.
+	 *
+	 * @return The n={@link BatchPolicy#getBatchSize()} most urgent items in the queue,
 	 * 			or the entire queue content if it wasn't that full,
-	 * 			mapped to the pending response(s) interested in those IDs 
+	 * 			mapped to the pending response(s) interested in those IDs
+	 * 			(which may yet grow, so should only be consumed via {@link #complete(String)})
 	 */
 	public Map<String, Collection<AggregationResponse>> dequeue() {
+		final int batchSize = policy.getBatchSize();
 		Map<String, Collection<AggregationResponse>> retVal = new HashMap<>();
-		for (int i = 0; i < QUEUE_THRESHOLD && !requestQueue.isEmpty(); i++) {
-			String id = requestQueue.remove();
-			retVal.put(id, responseManager.remove(id));
+		Pending pending;
+		while (retVal.size() < batchSize && (pending = requestQueue.pollFirst()) != null) {
+			size.decrementAndGet();
+			final String id = pending.id;
+			// Removal is atomic with respect to enqueue(), so no waiter can be attached to a claimed ID
+			// (and having won the poll, our entry is the one mapped; a re-prioritised entry replaces its predecessor atomically)
+			responseManager.remove(id);
+			// An enqueue racing with this one may have missed both maps and re-queued the ID, so merge vs put
+			retVal.put(id, inFlight.merge(id, pending.waiting, (current, more) -> {
+				current.addAll(more);
+				return current;
+			}));
 		}
 		return retVal;
 	}
+
+	/**
+	 * Stops tracking an in-flight ID, now that its data (or lack thereof) is available
+	 * @param id The ID whose request has completed
+	 * @return The response(s) awaiting that ID's data, or null if it wasn't in flight (e.g. it has already completed)
+	 */
+	public Collection<AggregationResponse> complete(String id) {
+		return inFlight.remove(id);
+	}
+
+	/**
+	 * @return Whether the ID has been dequeued but not yet completed
+	 */
+	public boolean isInFlight(String id) {
+		return inFlight.containsKey(id);
+	}
+
+	/**
+	 * @return The number of IDs currently in flight
+	 */
+	public int inFlightSize() {
+		return inFlight.size();
+	}
+
+	/**
+	 * A queued ID and the responses waiting on it, positioned by the earliest of their deadlines;
+	 * the ordering fields are immutable, so re-prioritising an ID replaces its entry
+	 */
+	private static final class Pending implements Comparable<Pending> {
+		private final String id;
+		private final long deadline;
+		private final long sequence;
+		private final Collection<AggregationResponse> waiting;
+
+		private Pending(String id, long deadline, long sequence, Collection<AggregationResponse> waiting) {
+			this.id = id;
+			this.deadline = deadline;
+			this.sequence = sequence;
+			this.waiting = waiting;
+		}
+
+		@Override
+		public int compareTo(Pending other) {
+			// Deadlines are System.nanoTime() readings from the one JVM, so compare directly (vs overflow-safe differences)
+			// in order that "no deadline" (Long.MAX_VALUE) sorts last
+			int byDeadline = Long.compare(deadline, other.deadline);
+			return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+		}
+	}
 }
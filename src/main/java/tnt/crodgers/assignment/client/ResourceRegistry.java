@@ -0,0 +1,75 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The component resources the Service aggregates, each assigned a slot (its index in the configured order)
+ * so that per-resource state, e.g. an aggregation response's data, can be held in arrays vs looked up by name.
+ *
+ * Configured via {@link ClientProperties}:
+ * <pre>
+ * client.resources - the resources to aggregate, comma-separated in the order they appear in responses (default shipments,pricing,track)
+ * </pre>
+ * Each resource's client is configured as usual via client.{resource}.{setting}, e.g. its base URL via client.{resource}.url.
+ */
+public final class ResourceRegistry {
+
+	static final String DEFAULT_RESOURCES = "shipments,pricing,track";
+
+	private static final ResourceRegistry SHARED = forProperties();
+
+	private final List<String> names;
+
+	private final Map<String, Integer> slots = new HashMap<>();
+
+	public ResourceRegistry(List<String> names) {
+		if (names.isEmpty()) {
+			throw new IllegalArgumentException("No resources to aggregate");
+		}
+		this.names = Collections.unmodifiableList(names);
+		for (int slot = 0; slot < names.size(); slot++) {
+			if (slots.put(names.get(slot), slot) != null) {
+				throw new IllegalArgumentException("Duplicate resource " + names.get(slot));
+			}
+		}
+	}
+
+	/**
+	 * @return The registry of the resources configured via System Properties
+	 */
+	public static ResourceRegistry shared() {
+		return SHARED;
+	}
+
+	private static ResourceRegistry forProperties() {
+		String resources = ClientProperties.get("resources");
+		return new ResourceRegistry(Arrays.asList((resources != null ? resources : DEFAULT_RESOURCES).trim().split("\\s*,\\s*")));
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * @return The resources, in slot order
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	public String name(int slot) {
+		return names.get(slot);
+	}
+
+	/**
+	 * @return The resource's slot, or -1 if it isn't registered
+	 */
+	public int slotOf(String resource) {
+		Integer slot = slots.get(resource);
+		return slot != null ? slot : -1;
+	}
+}
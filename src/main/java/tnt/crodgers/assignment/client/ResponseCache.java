@@ -0,0 +1,166 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+
+/**
+ * Bounded, TTL-based cache of a resource's component response data, keyed by ID,
+ * so that recently-fetched IDs can be answered without queueing a component call.
+ * Eviction is W-TinyLFU (via Caffeine), bounded either by entry count or by (approximate JSON) weight.
+ *
+ * Configured per resource via {@link ClientProperties}:
+ * <pre>
+ * client.{resource}.cache.ttl.ms     - how long a value is served from the cache, 0 disabling caching (default 0)
+ * client.{resource}.cache.max.size   - the most entries to hold (default 10000)
+ * client.{resource}.cache.max.weight - if set, bounds the cache by the approximate total JSON size of its entries instead
+ * </pre>
+ * An entry's weight is its ID's length plus that of its value's JSON: a raw value's own text,
+ * or for a decoded value, the extent of the JSON it was decoded from (vs re-encoding it to measure it).
+ */
+public class ResponseCache {
+
+	static final long DEFAULT_TTL_MS = 0;
+	static final long DEFAULT_MAX_SIZE = 10000;
+
+	/** Null when caching is disabled */
+	private final Cache<String, Entry> cache;
+
+	@Getter
+	private final long ttlMs;
+
+	private ResponseCache(Cache<String, Entry> cache, long ttlMs) {
+		this.cache = cache;
+		this.ttlMs = ttlMs;
+	}
+
+	/**
+	 * @param ttlMs How long a value is served from the cache
+	 * @param maxSize The most entries to hold
+	 */
+	public static ResponseCache bySize(long ttlMs, long maxSize) {
+		return new ResponseCache(Caffeine.newBuilder()
+				.expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+				.maximumSize(maxSize)
+				.recordStats()
+				.build(), ttlMs);
+	}
+
+	/**
+	 * @param ttlMs How long a value is served from the cache
+	 * @param maxWeight The most (approximate) characters of JSON to hold
+	 */
+	public static ResponseCache byWeight(long ttlMs, long maxWeight) {
+		return new ResponseCache(Caffeine.newBuilder()
+				.expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+				.maximumWeight(maxWeight)
+				.weigher((String id, Entry entry) -> id.length() + entry.weight)
+				.recordStats()
+				.build(), ttlMs);
+	}
+
+	/**
+	 * @return A cache that never holds anything
+	 */
+	public static ResponseCache disabled() {
+		return new ResponseCache(null, 0);
+	}
+
+	/**
+	 * @param resource The resource whose System Property configuration to apply
+	 * @return The configured cache for the resource
+	 */
+	public static ResponseCache forResource(String resource) {
+		long ttlMs = ClientProperties.getLong(resource, "cache.ttl.ms", DEFAULT_TTL_MS);
+		if (ttlMs <= 0) {
+			return disabled();
+		}
+		String maxWeight = ClientProperties.get(resource, "cache.max.weight");
+		if (maxWeight != null) {
+			return byWeight(ttlMs, Long.parseLong(maxWeight.trim()));
+		}
+		return bySize(ttlMs, ClientProperties.getLong(resource, "cache.max.size", DEFAULT_MAX_SIZE));
+	}
+
+	public boolean isEnabled() {
+		return cache != null;
+	}
+
+	/**
+	 * @param id The ID to look up
+	 * @return The cached value (which may itself be null, hence the Optional), or null if the ID isn't cached
+	 */
+	public Optional<Object> get(String id) {
+		if (cache == null) {
+			return null;
+		}
+		Entry entry = cache.getIfPresent(id);
+		return entry == null ? null : Optional.ofNullable(entry.value);
+	}
+
+	/**
+	 * @param id The ID whose data was received
+	 * @param value The data for the ID, which may be null
+	 * @param jsonLength The length of the JSON the value was read from, by which a decoded value is weighed
+	 */
+	public void put(String id, Object value, int jsonLength) {
+		if (cache != null) {
+			cache.put(id, new Entry(value, weigh(value, jsonLength)));
+		}
+	}
+
+	/**
+	 * @return The (approximate) length of the value's JSON
+	 */
+	static int weigh(Object value, int jsonLength) {
+		if (value instanceof RawValue && ((RawValue) value).rawValue() instanceof String) {
+			return ((String) ((RawValue) value).rawValue()).length();
+		}
+		return jsonLength;
+	}
+
+	/**
+	 * Publishes the cache's hit/miss/eviction counts and size (as the Micrometer cache.* meters), if caching is enabled
+	 * @param name The cache's name, by which its meters are tagged
+	 */
+	void monitor(MeterRegistry registry, String name, String resource) {
+		if (cache != null) {
+			CaffeineCacheMetrics.monitor(registry, cache, name, "resource", resource);
+		}
+	}
+
+	/**
+	 * @return Hit/miss/eviction counts; all zero if caching is disabled
+	 */
+	public CacheStats stats() {
+		return cache == null ? CacheStats.empty() : cache.stats();
+	}
+
+	/**
+	 * @return The number of entries currently held
+	 */
+	public long size() {
+		return cache == null ? 0 : cache.estimatedSize();
+	}
+
+	/**
+	 * A cached value (which may be null), along with its weight, fixed when it is cached
+	 */
+	private static final class Entry {
+		private final Object value;
+		private final int weight;
+
+		private Entry(Object value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+}
@@ -1,10 +1,26 @@
 package tnt.crodgers.assignment.client;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 /**
  * Callback interface to handle async/responsive lifecycle between client request and response 
  */
 public interface ResponseHandler {
-	void handleResponse(UUID callId, String ids, String responseJson);
+	/**
+	 * @param responseJson the (UTF-8) response body, as received; null if the call failed
+	 */
+	void handleResponse(UUID callId, String ids, byte[] responseJson);
+
+	default void handleResponse(UUID callId, String ids, String responseJson) {
+		handleResponse(callId, ids, responseJson == null ? null : responseJson.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Called instead of {@link #handleResponse(UUID, String, byte[])} when the call failed by timing out,
+	 * which by default is handled as any other failure
+	 */
+	default void handleTimeout(UUID callId, String ids) {
+		handleResponse(callId, ids, (byte[]) null);
+	}
 }
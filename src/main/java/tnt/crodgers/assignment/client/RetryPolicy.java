@@ -0,0 +1,69 @@
+package tnt.crodgers.assignment.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Determines how a {@link QueueBackedClient} retries a failed batch: split in two, so that an ID whose presence fails the
+ * component call is isolated within a few retries and only it goes without data, each half after an exponentially
+ * growing, jittered, backoff so batches that failed together don't retry together.
+ * A batch whose call timed out isn't retried, nor is one whose callers' deadline would pass before the retry was answered.
+ *
+ * Configured per resource via {@link ClientProperties}:
+ * <pre>
+ * client.{resource}.retry.max            - the most times an ID is retried, 0 meaning never (default 3, isolating an ID in a batch of 8)
+ * client.{resource}.retry.backoff.ms     - the backoff before the first retry, doubling for each subsequent one (default 50)
+ * client.{resource}.retry.backoff.max.ms - the longest backoff (default 1000)
+ * </pre>
+ */
+@ToString
+public class RetryPolicy {
+
+	static final int DEFAULT_MAX_RETRIES = 3;
+	static final long DEFAULT_BACKOFF_MS = 50;
+	static final long DEFAULT_MAX_BACKOFF_MS = 1000;
+
+	@Getter
+	private final int maxRetries;
+	private final long backoffMs;
+	private final long maxBackoffMs;
+
+	public RetryPolicy(int maxRetries, long backoffMs, long maxBackoffMs) {
+		if (maxRetries < 0 || backoffMs < 0 || maxBackoffMs < backoffMs) {
+			throw new IllegalArgumentException("Invalid retry policy: max retries=" + maxRetries + ", backoff=" + backoffMs
+					+ "ms, max backoff=" + maxBackoffMs + "ms");
+		}
+		this.maxRetries = maxRetries;
+		this.backoffMs = backoffMs;
+		this.maxBackoffMs = maxBackoffMs;
+	}
+
+	/**
+	 * @return A policy that never retries
+	 */
+	public static RetryPolicy disabled() {
+		return new RetryPolicy(0, 0, 0);
+	}
+
+	/**
+	 * @param resource The resource whose System Property configuration to apply
+	 * @return The configured policy for the resource
+	 */
+	public static RetryPolicy forResource(String resource) {
+		return new RetryPolicy(
+				ClientProperties.getInt(resource, "retry.max", DEFAULT_MAX_RETRIES),
+				ClientProperties.getLong(resource, "retry.backoff.ms", DEFAULT_BACKOFF_MS),
+				ClientProperties.getLong(resource, "retry.backoff.max.ms", DEFAULT_MAX_BACKOFF_MS));
+	}
+
+	/**
+	 * @param attempt The retry about to be made, from 1
+	 * @return How long to wait before making it: at least half the exponential backoff, plus a random share of the rest
+	 */
+	public long getBackoffMs(int attempt) {
+		long backoff = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+}
@@ -0,0 +1,79 @@
+package tnt.crodgers.assignment.service.aggregation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Bounds the work the Service takes on, so that a stalled component Service plus continuing traffic degrades into
+ * prompt rejections that callers can back off from, vs ever more aggregations (and their queued IDs) filling the heap:
+ * 	- the aggregation requests awaiting their responses are bounded here, the excess being rejected with 429 Too Many Requests
+ * 	- the IDs queued per resource are bounded via client.{resource}.queue.max (see {@link tnt.crodgers.assignment.client.QueueBackedClient}),
+ * 		requests needing a full queue being rejected with 503 Service Unavailable
+ * 	- the batches in flight per resource are bounded via client.{resource}.batch.max.inflight, the excess remaining queued
+ * Rejections carry a Retry-After header, telling callers how long to back off.
+ *
+ * Configured via System Properties:
+ * <pre>
+ * aggregation.max.pending   - the most aggregation requests that may await their responses at once, 0 meaning no limit (default 10000)
+ * aggregation.retry.after.s - the Retry-After given with rejections, in seconds (default 1)
+ * </pre>
+ */
+@ToString
+public class AdmissionControl {
+
+	static final int DEFAULT_MAX_PENDING = 10000;
+	static final long DEFAULT_RETRY_AFTER_S = 1;
+
+	@Getter
+	private final int maxPending;
+
+	@Getter
+	private final long retryAfterS;
+
+	@ToString.Exclude
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * @param maxPending The most aggregation requests that may be pending at once, 0 meaning no limit
+	 * @param retryAfterS How long rejected callers are asked to wait before retrying
+	 */
+	public AdmissionControl(int maxPending, long retryAfterS) {
+		if (maxPending < 0 || retryAfterS < 0) {
+			throw new IllegalArgumentException("Invalid admission control: max pending=" + maxPending + ", retry after=" + retryAfterS + "s");
+		}
+		this.maxPending = maxPending == 0 ? Integer.MAX_VALUE : maxPending;
+		this.retryAfterS = retryAfterS;
+	}
+
+	/**
+	 * @return The admission control configured via System Properties
+	 */
+	public static AdmissionControl fromProperties() {
+		return new AdmissionControl(Integer.getInteger("aggregation.max.pending", DEFAULT_MAX_PENDING),
+				Long.getLong("aggregation.retry.after.s", DEFAULT_RETRY_AFTER_S));
+	}
+
+	/**
+	 * @return Whether a request may proceed, in which case it must {@link #release()} once answered (or abandoned)
+	 */
+	public boolean tryAcquire() {
+		if (pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	public void release() {
+		pending.decrementAndGet();
+	}
+
+	/**
+	 * @return The number of admitted requests not yet released
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+}
@@ -1,100 +1,389 @@
 package tnt.crodgers.assignment.service.aggregation;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
 import lombok.Getter;
-import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import tnt.crodgers.assignment.client.ResourceRegistry;
 
 /**
  * Response object used to collate component responses,
- * then signal the waiting handler to return the aggregation response.
- * 
- * Fields (those with getters) are structured to have the desired default JSON conversion.
+ * then signal the awaiting handler (via {@link #whenPopulated()}) to return the aggregation response.
+ *
+ * Each resource is held in a slot, as assigned by the {@link ResourceRegistry}, so the component clients
+ * address their resource by index vs comparing names for every value they set.
+ * Within the response, each expected ID is interned to an index: the IDs are held sorted, in one array with a range per slot,
+ * alongside an array of their values and a bitset of those still awaited, so a response costs a handful of arrays
+ * (vs a set and map, and their entries, per resource) and its completion is a check of a single counter.
+ * The JSON form has a field per resource, in slot order, holding its data by ID (or null if there was none to be had).
+ *
+ * Alternatively, each requested resource's data can be {@link #stream()}ed as soon as it is complete.
+ *
+ * A response may carry a deadline, by which the caller wants whatever data is available;
+ * once {@link #expire()}d it stops accepting data, and lists the resources it is missing data for as "incomplete".
  */
 @Slf4j
-@ToString
+@JsonSerialize(using = AggregationResponse.Serializer.class)
 public class AggregationResponse {
+
+	private final ResourceRegistry resources;
+
+	/** The expected IDs, sorted within each slot's range */
+	private final String[] ids;
+
+	/** The index in {@link #ids} at which each slot's range starts, with a final entry marking the end of the last */
+	private final int[] offsets;
+
+	/** The data received for each ID, by index */
+	private final Object[] values;
+
+	/** A bit per ID, by index, set while its data is awaited */
+	private final long[] awaiting;
+
+	/** The number of IDs still awaiting data per slot, and in total */
+	private final int[] remaining;
+	private int outstanding;
+
+	/** The number of IDs for which data has been received per slot; the slot's data is null while there is none */
+	private final int[] received;
+
+	/** The resources still awaiting data when the response expired; omitted from the JSON when complete */
 	@Getter
-	private Map<String, Object> shipments;
-	@Getter
-	private Map<String, Object> pricing;
-	@Getter
-	private Map<String, Object> track;
+	private Set<String> incomplete;
+
+	/** When the caller stops waiting, as per {@link System#nanoTime()}, if it gave a deadline */
+	private final long deadlineNanos;
+	private final boolean hasDeadline;
+
+	/** Set once the deadline has passed, after which data is ignored so the partial response can be safely serialised */
+	private boolean expired;
+
+	/** Completion signal, emitted (once) when all expected responses have been received */
+	private final Sinks.One<AggregationResponse> populated = Sinks.one();
 
-	private Set<String> shipmentsExpected, pricingExpected, trackExpected;
-	
-	public AggregationResponse(Set<String> shipmentsParams, Set<String> pricingParams, Set<String> trackParams) {
-		shipmentsExpected = new HashSet<>(shipmentsParams);
-		pricingExpected   = new HashSet<>(pricingParams);
-		trackExpected     = new HashSet<>(trackParams);
+	/** Each requested resource's data as it completes, created only if the response is {@link #stream()}ed */
+	private Sinks.Many<Map<String, Object>> completions;
+
+	/**
+	 * @param expected The IDs expected for each (registered) resource, by name
+	 */
+	public AggregationResponse(Map<String, Set<String>> expected) {
+		this(ResourceRegistry.shared(), bySlot(ResourceRegistry.shared(), expected), 0, false);
 	}
 
-	public synchronized void set(String resource, String key, Object val) {
-		synchronized (this) {
-			if (resource.equalsIgnoreCase("pricing")) {
-				pricing = set(resource, pricing, pricingExpected, key, val);
+	/**
+	 * @param timeoutMs How long from now the caller is prepared to wait for the response
+	 */
+	public AggregationResponse(Map<String, Set<String>> expected, long timeoutMs) {
+		this(ResourceRegistry.shared(), bySlot(ResourceRegistry.shared(), expected), timeoutMs);
+	}
+
+	/**
+	 * @param expected The IDs expected for each of the registry's resources, by slot
+	 * @param timeoutMs How long from now the caller is prepared to wait for the response
+	 */
+	public AggregationResponse(ResourceRegistry resources, List<Set<String>> expected, long timeoutMs) {
+		this(resources, expected, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs), true);
+	}
+
+	private AggregationResponse(ResourceRegistry resources, List<Set<String>> expected, long deadlineNanos, boolean hasDeadline) {
+		this.resources = resources;
+		int slots = resources.size();
+		this.offsets = new int[slots + 1];
+		this.remaining = new int[slots];
+		this.received = new int[slots];
+		for (int slot = 0; slot < slots; slot++) {
+			remaining[slot] = expected.get(slot).size();
+			offsets[slot + 1] = offsets[slot] + remaining[slot];
+		}
+		this.outstanding = offsets[slots];
+		this.ids = new String[outstanding];
+		this.values = new Object[outstanding];
+		for (int slot = 0; slot < slots; slot++) {
+			int index = offsets[slot];
+			for (String id : expected.get(slot)) {
+				ids[index++] = id;
+			}
+			Arrays.sort(ids, offsets[slot], index);
+		}
+		this.awaiting = new long[(outstanding + 63) >>> 6];
+		for (int index = 0; index < outstanding; index++) {
+			awaiting[index >>> 6] |= 1L << index;
+		}
+		this.deadlineNanos = deadlineNanos;
+		this.hasDeadline = hasDeadline;
+	}
+
+	private static List<Set<String>> bySlot(ResourceRegistry resources, Map<String, Set<String>> expected) {
+		List<Set<String>> bySlot = new ArrayList<>(Collections.nCopies(resources.size(), Collections.emptySet()));
+		for (Map.Entry<String, Set<String>> ids : expected.entrySet()) {
+			bySlot.set(slotOf(resources, ids.getKey()), ids.getValue());
+		}
+		return bySlot;
+	}
+
+	private static int slotOf(ResourceRegistry resources, String resource) {
+		int slot = resources.slotOf(resource);
+		if (slot < 0) {
+			throw new IllegalArgumentException("Unregistered resource " + resource);
+		}
+		return slot;
+	}
+
+	private boolean isAwaiting(int index) {
+		return (awaiting[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @return The time left until the caller's deadline (0 if passed), or {@link Long#MAX_VALUE} if it gave none
+	 */
+	public long remainingMs() {
+		if (!hasDeadline) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+	}
+
+	/**
+	 * @return The caller's deadline as per {@link System#nanoTime()}, or {@link Long#MAX_VALUE} if it gave none
+	 */
+	public long deadlineNanos() {
+		return hasDeadline ? deadlineNanos : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return The data received for the resource by ID, or null if none has been (or could be)
+	 */
+	public synchronized Map<String, Object> getData(String resource) {
+		int slot = slotOf(resources, resource);
+		if (received[slot] == 0) {
+			return null;
+		}
+		Map<String, Object> data = new LinkedHashMap<>();
+		for (int index = offsets[slot]; index < offsets[slot + 1]; index++) {
+			if (!isAwaiting(index)) {
+				data.put(ids[index], values[index]);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Stops accepting data, recording which resources are still awaiting some, so the response can be returned as it stands.
+	 * @return This instance
+	 */
+	public synchronized AggregationResponse expire() {
+		if (!expired) {
+			expired = true;
+			incomplete = new TreeSet<>();
+			for (int slot = 0; slot < remaining.length; slot++) {
+				if (remaining[slot] > 0) {
+					incomplete.add(resources.name(slot));
+				}
 			}
-			else if (resource.equalsIgnoreCase("track")) {
-				track = set(resource, track, trackExpected, key, val);
+		}
+		return this;
+	}
+
+	/**
+	 * @return A Mono emitting this instance once all expected responses have been received;
+	 * 			subscribing does not block, so any number of aggregations can be pending without parking threads
+	 */
+	public Mono<AggregationResponse> whenPopulated() {
+		synchronized (this) {
+			// Covers the degenerate case of nothing having been expected in the first place
+			if (allResponsesReceived()) {
+				populated.tryEmitValue(this);
 			}
-			else if (resource.equalsIgnoreCase("shipments")) {
-				shipments = set(resource, shipments, shipmentsExpected, key, val);
-			}	
-			notifyIfPopulated();
 		}
+		return populated.asMono();
 	}
 
-	private Map<String, Object> set(String resource, Map<String, Object> data, Set<String> expected,
-			String key, Object val) {
-		if (!expected.remove(key)) {
-			log.error(String.format("Ignoring unepxected response data: %s[%s]", resource, key));
+	public void set(String resource, String key, Object val) {
+		set(slotOf(resources, resource), key, val);
+	}
+
+	/**
+	 * @param slot The resource's slot, as per the {@link ResourceRegistry}
+	 */
+	public synchronized void set(int slot, String key, Object val) {
+		if (expired) {
+			return;
+		}
+		int index = Arrays.binarySearch(ids, offsets[slot], offsets[slot + 1], key);
+		if (index < 0 || !isAwaiting(index)) {
+			log.error("Ignoring unepxected response data: {}[{}]", resources.name(slot), key);
 		} else {
-			if (data == null) {
-				data = new HashMap<>();
+			log.debug("Storing response {}({})={}", resources.name(slot), key, val);
+			awaiting[index >>> 6] &= ~(1L << index);
+			values[index] = val;
+			received[slot]++;
+			remaining[slot]--;
+			outstanding--;
+			if (remaining[slot] == 0) {
+				emitCompletion(slot);
 			}
-			log.debug(String.format("Storing response %s(%s)=%s", resource, key, val));
-			data.put(key, val);
 		}
-		return data;
+		notifyIfPopulated();
 	}
 
 	/**
 	 * @param resource The resource for which we were unable to retrieve data and wish to return null
 	 */
 	public void reset(String resource) {
-		synchronized (this) {
-			if (resource.equalsIgnoreCase("pricing")) {
-				pricing = null;
-				pricingExpected.clear();
-			}
-			else if (resource.equalsIgnoreCase("track")) {
-				track = null;
-				trackExpected.clear();
+		reset(slotOf(resources, resource));
+	}
+
+	public synchronized void reset(int slot) {
+		if (expired) {
+			return;
+		}
+		for (int index = offsets[slot]; index < offsets[slot + 1]; index++) {
+			awaiting[index >>> 6] &= ~(1L << index);
+			values[index] = null;
+		}
+		received[slot] = 0;
+		outstanding -= remaining[slot];
+		if (remaining[slot] > 0) {
+			remaining[slot] = 0;
+			emitCompletion(slot);
+		}
+		notifyIfPopulated();
+	}
+
+	/**
+	 * Streams the data of each resource that IDs were expected for, as a single-entry map of the resource to its data by ID
+	 * (or null, as per {@link #getData(String)}), as soon as that resource is complete, completing once every resource is.
+	 * Resources already complete are emitted straight away; the stream is meant for a single subscriber, and
+	 * stops with the response's deadline, after which data is no longer accepted.
+	 * @return The stream of resources' data, in the order they complete
+	 */
+	public synchronized Flux<Map<String, Object>> stream() {
+		if (completions == null) {
+			completions = Sinks.many().unicast().onBackpressureBuffer();
+			for (int slot = 0; slot < remaining.length; slot++) {
+				if (remaining[slot] == 0 && offsets[slot + 1] > offsets[slot]) {
+					emitCompletion(slot);
+				}
 			}
-			else if (resource.equalsIgnoreCase("shipments")) {
-				shipments = null;
-				shipmentsExpected.clear();
+			// Covers the degenerate case of nothing having been expected in the first place
+			if (outstanding == 0) {
+				completions.tryEmitComplete();
 			}
-	
-			notifyIfPopulated();
+		}
+		return completions.asFlux();
+	}
+
+	/**
+	 * Emits a resource's data to the stream, if there is one, completing the stream once nothing is outstanding
+	 */
+	private void emitCompletion(int slot) {
+		if (completions == null) {
+			return;
+		}
+		String resource = resources.name(slot);
+		completions.tryEmitNext(Collections.singletonMap(resource, getData(resource)));
+		if (outstanding == 0) {
+			completions.tryEmitComplete();
 		}
 	}
 
 	protected boolean allResponsesReceived() {
-		return shipmentsExpected.isEmpty() && pricingExpected.isEmpty() && trackExpected.isEmpty();
+		return outstanding == 0;
 	}
 
 	private void notifyIfPopulated() {
 		if (allResponsesReceived()) {
-			log.debug(String.format("Response now populated: [%s], notifying", this));
-			this.notify();
-		} else {
-			log.debug(String.format("Response still waiting on %d track, %d shipment, %d pricing responses", 
-					trackExpected.size(), shipmentsExpected.size(), pricingExpected.size()));
+			log.debug("Response now populated: [{}], notifying", this);
+			// Only the first completion is of interest; later (e.g. late/duplicate) emissions are no-ops
+			populated.tryEmitValue(this);
+		} else if (log.isDebugEnabled()) {
+			StringBuilder waiting = new StringBuilder();
+			for (int slot = 0; slot < remaining.length; slot++) {
+				waiting.append(slot == 0 ? "" : ", ").append(remaining[slot]).append(' ').append(resources.name(slot));
+			}
+			log.debug("Response still waiting on {} responses", waiting);
+		}
+	}
+
+	/**
+	 * Lists each resource's data, for debugging
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder string = new StringBuilder("AggregationResponse(");
+		for (int slot = 0; slot < remaining.length; slot++) {
+			string.append(resources.name(slot)).append('=');
+			appendData(string, slot);
+			string.append(", ");
+		}
+		return string.append("incomplete=").append(incomplete).append(')').toString();
+	}
+
+	private void appendData(StringBuilder string, int slot) {
+		if (received[slot] == 0) {
+			string.append("null");
+			return;
+		}
+		string.append('{');
+		boolean first = true;
+		for (int index = offsets[slot]; index < offsets[slot + 1]; index++) {
+			if (!isAwaiting(index)) {
+				string.append(first ? "" : ", ").append(ids[index]).append('=').append(values[index]);
+				first = false;
+			}
+		}
+		string.append('}');
+	}
+
+	/**
+	 * Writes a field per resource, then any incomplete resources, straight from the response's arrays
+	 */
+	static class Serializer extends StdSerializer<AggregationResponse> {
+		private static final long serialVersionUID = 1L;
+
+		Serializer() {
+			super(AggregationResponse.class);
+		}
+
+		@Override
+		public void serialize(AggregationResponse response, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			gen.writeStartObject();
+			for (int slot = 0; slot < response.remaining.length; slot++) {
+				gen.writeFieldName(response.resources.name(slot));
+				if (response.received[slot] == 0) {
+					gen.writeNull();
+					continue;
+				}
+				gen.writeStartObject();
+				for (int index = response.offsets[slot]; index < response.offsets[slot + 1]; index++) {
+					if (!response.isAwaiting(index)) {
+						provider.defaultSerializeField(response.ids[index], response.values[index], gen);
+					}
+				}
+				gen.writeEndObject();
+			}
+			if (response.incomplete != null && !response.incomplete.isEmpty()) {
+				provider.defaultSerializeField("incomplete", response.incomplete, gen);
+			}
+			gen.writeEndObject();
 		}
 	}
 }
@@ -1,19 +1,35 @@
 package tnt.crodgers.assignment.service.aggregation;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import tnt.crodgers.assignment.client.QueueBackedClient;
+import tnt.crodgers.assignment.client.ResourceRegistry;
 
 /**
  * Handler for decomposing aggregation requests into their individual calls,
@@ -23,56 +39,280 @@ import tnt.crodgers.assignment.client.QueueBackedClient;
 @Component
 public class RequestHandler {
 
-	protected static QueueBackedClient shipmentsClient = new QueueBackedClient("shipments");
+	private static final ResourceRegistry RESOURCES = ResourceRegistry.shared();
 
-	protected static QueueBackedClient pricingClient = new QueueBackedClient("pricing");
+	/** A client per registered resource, by slot, created as the Service starts */
+	protected static final QueueBackedClient[] clients = createClients(RESOURCES);
 
-	protected static QueueBackedClient trackClient = new QueueBackedClient("track");
+	private static QueueBackedClient[] createClients(ResourceRegistry resources) {
+		QueueBackedClient[] clients = new QueueBackedClient[resources.size()];
+		for (int slot = 0; slot < clients.length; slot++) {
+			clients[slot] = new QueueBackedClient(resources.name(slot));
+		}
+		return clients;
+	}
 
 	/** 
 	 * Prematurely respond to any pending requests after 30 seconds.
 	 * This is a defensive measure vs something we should expect to have happen,
 	 * as the individual component calls should return in a timely manner.
+	 * Callers may ask for a shorter timeout via {@link #TIMEOUT_HEADER} or {@link #TIMEOUT_PARAM}.
 	 */ 
 	private static final int TIMEOUT_MS = 30000;
-	
+
+	/** Header (or, failing that, query parameter) through which a caller gives the ms it will wait for a response */
+	static final String TIMEOUT_HEADER = "X-Request-Timeout";
+	static final String TIMEOUT_PARAM = "timeout";
+
+	/**
+	 * One in this many requests is logged at INFO (or every request, if DEBUG is enabled),
+	 * configured via <pre>-Daggregation.log.sample={N}</pre>; default 100, 0 to log none
+	 */
+	private static final int LOG_SAMPLE = Integer.getInteger("aggregation.log.sample", 100);
+
+	/** Requests turned away, by which limit they would have exceeded */
+	private static final Counter REJECTED_PENDING = rejectionCounter("pending");
+	private static final Counter REJECTED_QUEUE = rejectionCounter("queue");
+
+	private static Counter rejectionCounter(String reason) {
+		return Counter.builder("aggregation.rejected")
+				.description("Aggregation requests rejected to bound the Service's backlog")
+				.tag("reason", reason)
+				.register(Metrics.globalRegistry);
+	}
+
+	private static final ParameterizedTypeReference<Map<String, Object>> STREAMED_TYPE = new ParameterizedTypeReference<Map<String, Object>>() {
+	};
+
+	/** Bounds the aggregation requests pending at once */
+	private final AdmissionControl admission;
+
+	public RequestHandler() {
+		this(AdmissionControl.fromProperties());
+	}
+
+	RequestHandler(AdmissionControl admission) {
+		this.admission = admission;
+		Gauge.builder("aggregation.pending", admission, AdmissionControl::getPending)
+				.description("Aggregation requests awaiting their responses")
+				.register(Metrics.globalRegistry);
+	}
+
+	/** End-to-end aggregation latency, by whether all the component data arrived vs timing out */
+	private static final Timer COMPLETED = aggregationTimer("complete");
+	private static final Timer TIMED_OUT = aggregationTimer("timeout");
+
+	private static Timer aggregationTimer(String outcome) {
+		return Timer.builder("aggregation.requests")
+				.description("Aggregation request latency")
+				.tag("outcome", outcome)
+				.publishPercentileHistogram()
+				.minimumExpectedValue(Duration.ofMillis(1))
+				.maximumExpectedValue(Duration.ofMillis(TIMEOUT_MS))
+				.register(Metrics.globalRegistry);
+	}
 	
 	public Mono<ServerResponse> get(ServerRequest request) {
-		String uri = request.uri().toString();
-		log.info("REQUEST: " + uri);
-		AggregationResponse response = get(request.queryParams().toSingleValueMap());
-		log.info("RESPONDING: " + uri);
-		
-		return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).body(BodyInserters.fromValue(response));
+		final boolean logged = isLogged();
+		if (logged) {
+			log.info("REQUEST: {}", request.uri());
+		}
+		final long start = System.nanoTime();
+		final long timeoutMs = getTimeoutMs(request);
+		final Map<String, String> params = request.queryParams().toSingleValueMap();
+
+		Mono<ServerResponse> rejection = admit(request, params);
+		if (rejection != null) {
+			return rejection;
+		}
+		AggregationResponse response = getAdmitted(params, timeoutMs);
+
+		// Wait (without blocking the event loop) for the component calls to complete and their responses to become available.
+		// If we timeout first, we send whatever is available, marking which resources are incomplete.
+		return response.whenPopulated()
+				.doOnNext(populated -> COMPLETED.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+				.timeout(Duration.ofMillis(timeoutMs), Mono.fromSupplier(() -> {
+					TIMED_OUT.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+					AggregationResponse partial = response.expire();
+					if (timeoutMs == TIMEOUT_MS) {
+						log.warn("Timed out waiting for responses: {}", request.uri());
+					} else {
+						log.debug("Deadline of {}ms reached, responding without {}: {}", timeoutMs, partial.getIncomplete(), request.uri());
+					}
+					return partial;
+				}))
+				.flatMap(populated -> {
+					if (logged) {
+						log.info("RESPONDING: {}", request.uri());
+					}
+					return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).body(BodyInserters.fromValue(populated));
+				})
+				// Whether answered, or abandoned by the caller
+				.doFinally(signal -> admission.release());
 	}
 
-	protected AggregationResponse get(Map<String, String> params) {
-		Set<String> shipmentsParams = dedup(params.get("shipments"));
-		Set<String> pricingParams   = dedup(params.get("pricing"));
-		Set<String> trackParams     = dedup(params.get("track"));
-
-		// Create a response instance to gather the individual responses
-		final AggregationResponse response = new AggregationResponse(shipmentsParams, pricingParams, trackParams);
-		synchronized (response) {
-			if (!shipmentsParams.isEmpty()) {
-				shipmentsClient.request(shipmentsParams, response);
-			}
-			if (!pricingParams.isEmpty()) {
-				pricingClient.request(pricingParams, response);
-			}
-			if (!trackParams.isEmpty()) {
-				trackClient.request(trackParams, response);
+	/**
+	 * Streams each requested resource's data as soon as it has all arrived, vs waiting for every resource:
+	 * as newline-delimited JSON objects of the resource to its data, or as Server-Sent Events of the same named for the resource.
+	 * If the caller's deadline passes first, the stream ends with an object listing the "incomplete" resources.
+	 */
+	public Mono<ServerResponse> stream(ServerRequest request) {
+		final boolean logged = isLogged();
+		if (logged) {
+			log.info("STREAM REQUEST: {}", request.uri());
+		}
+		final long start = System.nanoTime();
+		final long timeoutMs = getTimeoutMs(request);
+		final Map<String, String> params = request.queryParams().toSingleValueMap();
+		Mono<ServerResponse> rejection = admit(request, params);
+		if (rejection != null) {
+			return rejection;
+		}
+		AggregationResponse response = getAdmitted(params, timeoutMs);
+
+		// Stream resources as they complete until the caller's deadline (vs Flux#timeout, which would time each resource),
+		// then list any that are still missing
+		Flux<Map<String, Object>> resources = response.stream()
+				.take(Duration.ofMillis(timeoutMs))
+				.concatWith(Flux.defer(() -> {
+					Set<String> incomplete = response.expire().getIncomplete();
+					if (incomplete.isEmpty()) {
+						COMPLETED.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+						return Flux.empty();
+					}
+					TIMED_OUT.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+					log.debug("Deadline of {}ms reached, ending stream without {}: {}", timeoutMs, incomplete, request.uri());
+					return Flux.just(Collections.<String, Object>singletonMap("incomplete", incomplete));
+				}))
+				.doOnComplete(() -> {
+					if (logged) {
+						log.info("STREAMED: {}", request.uri());
+					}
+				})
+				// Whether answered, or abandoned by the caller
+				.doFinally(signal -> admission.release());
+
+		if (acceptsEventStream(request)) {
+			return ServerResponse.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(BodyInserters.fromServerSentEvents(
+					resources.map(data -> ServerSentEvent.builder(data).event(data.keySet().iterator().next()).build())));
+		}
+		return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON).body(BodyInserters.fromPublisher(resources, STREAMED_TYPE));
+	}
+
+	/**
+	 * @return Whether the caller asked for Server-Sent Events, as matched by the route, i.e. regardless of parameters
+	 * 			(charset, quality etc.); a wildcard doesn't count as asking for them, NDJSON being the default
+	 */
+	private static boolean acceptsEventStream(ServerRequest request) {
+		return request.headers().accept().stream()
+				.anyMatch(type -> !type.isWildcardType() && MediaType.TEXT_EVENT_STREAM.isCompatibleWith(type));
+	}
+
+	/**
+	 * Turns the request away up front, before it takes up any memory, if the Service already has as much as it can handle
+	 * @return The rejection, or null if the request was admitted, in which case it must release its admission once answered
+	 */
+	private Mono<ServerResponse> admit(ServerRequest request, Map<String, String> params) {
+		if (!admission.tryAcquire()) {
+			REJECTED_PENDING.increment();
+			log.debug("{} aggregations pending, rejecting: {}", admission.getPending(), request.uri());
+			return reject(HttpStatus.TOO_MANY_REQUESTS);
+		}
+		String saturated = saturatedResource(params);
+		if (saturated != null) {
+			admission.release();
+			REJECTED_QUEUE.increment();
+			log.debug("{} queue full, rejecting: {}", saturated, request.uri());
+			return reject(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		return null;
+	}
+
+	/**
+	 * Requests the aggregation for an admitted request, releasing the admission if that fails,
+	 * since the request then never reaches the pipeline that would release it once answered
+	 */
+	private AggregationResponse getAdmitted(Map<String, String> params, long timeoutMs) {
+		try {
+			return get(params, timeoutMs);
+		} catch (RuntimeException e) {
+			admission.release();
+			throw e;
+		}
+	}
+
+	private Mono<ServerResponse> reject(HttpStatus status) {
+		return ServerResponse.status(status).header(HttpHeaders.RETRY_AFTER, Long.toString(admission.getRetryAfterS())).build();
+	}
+
+	/**
+	 * @return A resource the request needs whose client's queue is full, or null if there is none
+	 */
+	private static String saturatedResource(Map<String, String> params) {
+		for (int slot = 0; slot < clients.length; slot++) {
+			String ids = params.get(RESOURCES.name(slot));
+			if (ids != null && !ids.isEmpty() && clients[slot].isSaturated()) {
+				return RESOURCES.name(slot);
 			}
-			
-			// Wait for the component calls to complete and their responses to become available.
-			// If we timeout first, we send whatever is available.
+		}
+		return null;
+	}
+
+	/**
+	 * @return Whether to log the current request, sampling (without any shared state) if only INFO is enabled
+	 */
+	private static boolean isLogged() {
+		if (log.isDebugEnabled()) {
+			return true;
+		}
+		return LOG_SAMPLE > 0 && log.isInfoEnabled() && ThreadLocalRandom.current().nextInt(LOG_SAMPLE) == 0;
+	}
+
+	/**
+	 * @return The caller's requested timeout, capped at {@link #TIMEOUT_MS} (which is also the default);
+	 * 			as with the other parameters, an unusable value is ignored rather than rejected
+	 */
+	protected long getTimeoutMs(ServerRequest request) {
+		String requested = request.headers().firstHeader(TIMEOUT_HEADER);
+		if (requested == null) {
+			requested = request.queryParam(TIMEOUT_PARAM).orElse(null);
+		}
+		if (requested != null) {
 			try {
-				response.wait(TIMEOUT_MS);
-			} catch (InterruptedException e) {
-				log.error("Interrupted while waiting for responses", e);
+				return Math.max(0, Math.min(TIMEOUT_MS, Long.parseLong(requested.trim())));
+			} catch (NumberFormatException e) {
+				log.debug("Ignoring invalid timeout {}", requested);
+			}
+		}
+		return TIMEOUT_MS;
+	}
+
+	/**
+	 * Issues the component requests for the given aggregation parameters without waiting on their responses.
+	 * @param params The aggregation request's parameters
+	 * @return The response instance that will be populated as the component responses arrive; see {@link AggregationResponse#whenPopulated()}
+	 */
+	protected AggregationResponse get(Map<String, String> params) {
+		return get(params, TIMEOUT_MS);
+	}
+
+	/**
+	 * @param timeoutMs How long the caller will wait for the response, which the component clients use to prioritise its requests
+	 */
+	protected AggregationResponse get(Map<String, String> params, long timeoutMs) {
+		List<Set<String>> ids = new ArrayList<>(clients.length);
+		for (int slot = 0; slot < clients.length; slot++) {
+			ids.add(dedup(params.get(RESOURCES.name(slot))));
+		}
+
+		// Create a response instance to gather the individual responses, expecting every resource's IDs before any are requested
+		final AggregationResponse response = new AggregationResponse(RESOURCES, ids, timeoutMs);
+		for (int slot = 0; slot < clients.length; slot++) {
+			if (!ids.get(slot).isEmpty()) {
+				clients[slot].request(ids.get(slot), response);
 			}
 		}
-		
+
 		return response;
 	}
 
@@ -9,7 +9,8 @@ import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
 /**
- * Routes for our Service's supported paths and HTTP methods - currently only GET /aggregation
+ * Routes for our Service's supported paths and HTTP methods - currently only GET /aggregation,
+ * as a single JSON response or, when asked for as application/x-ndjson or text/event-stream, streamed per resource
  */
 @Configuration
 public class RequestRouter {
@@ -22,7 +23,11 @@ public class RequestRouter {
 	public RouterFunction<ServerResponse> route(RequestHandler handler) {
 		return RouterFunctions.route(
 				RequestPredicates.GET("/aggregation").and(RequestPredicates.accept(MediaType.APPLICATION_JSON)),
-				handler::get);
+				handler::get)
+				// Streaming is opt-in, so a caller accepting anything gets the single JSON response
+				.andRoute(RequestPredicates.GET("/aggregation")
+						.and(RequestPredicates.accept(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM)),
+						handler::stream);
 	}
 
 }
\ No newline at end of file
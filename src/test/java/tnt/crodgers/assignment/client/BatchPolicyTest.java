@@ -0,0 +1,103 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class BatchPolicyTest {
+
+	@AfterEach
+	void clearProperties() {
+		System.clearProperty("client.test.batch.size");
+		System.clearProperty("client.batch.delay.ms");
+		System.clearProperty("client.test.batch.adaptive");
+	}
+
+	@Test
+	void testDefaults() {
+		BatchPolicy policy = BatchPolicy.forResource("test");
+		assertFalse(policy instanceof AdaptiveBatchPolicy);
+		assertEquals(5, policy.getBatchSize());
+		assertEquals(5000, policy.getDelayMs());
+	}
+
+	@Test
+	void testConfigured() {
+		System.setProperty("client.test.batch.size", "20");
+		System.setProperty("client.batch.delay.ms", "250");
+		BatchPolicy policy = BatchPolicy.forResource("test");
+		assertEquals(20, policy.getBatchSize());
+		assertEquals(250, policy.getDelayMs());
+
+		// The all-resource setting applies to other resources too, but not the resource-specific one
+		assertEquals(5, BatchPolicy.forResource("other").getBatchSize());
+		assertEquals(250, BatchPolicy.forResource("other").getDelayMs());
+	}
+
+	@Test
+	void testConfiguredAdaptive() {
+		System.setProperty("client.test.batch.adaptive", "true");
+		assertTrue(BatchPolicy.forResource("test") instanceof AdaptiveBatchPolicy);
+	}
+
+	@Test
+	void testAdaptiveLightTraffic() {
+		AdaptiveBatchPolicy policy = new AdaptiveBatchPolicy(BatchPolicy.defaults(), 1000, 1, 100, 0);
+		// Never wait longer than the target latency
+		assertEquals(1000, policy.getDelayMs());
+
+		// One ID every second
+		for (long now = 1000; now <= 10000; now += 1000) {
+			policy.recordArrivals(1, now);
+		}
+		assertEquals(1, policy.getBatchSize());
+	}
+
+	@Test
+	void testAdaptiveHeavyTraffic() {
+		AdaptiveBatchPolicy policy = new AdaptiveBatchPolicy(BatchPolicy.defaults(), 1000, 1, 100, 0);
+
+		// 50 IDs every 10ms, i.e. way more than the max in a target latency period
+		for (long now = 10; now <= 10000; now += 10) {
+			policy.recordArrivals(50, now);
+		}
+		assertEquals(100, policy.getBatchSize());
+	}
+
+	@Test
+	void testAdaptiveIdleAfterBurst() {
+		AdaptiveBatchPolicy policy = new AdaptiveBatchPolicy(BatchPolicy.defaults(), 1000, 1, 100, 0);
+
+		// A burst of 50 IDs every 10ms
+		for (long now = 10; now <= 1000; now += 10) {
+			policy.recordArrivals(50, now);
+		}
+		assertEquals(100, policy.getBatchSize());
+
+		// Then nothing for 10 seconds, so a lone ID is sent straight away vs waiting on batch-mates that aren't coming
+		policy.recordArrivals(1, 11000);
+		assertEquals(1, policy.getBatchSize());
+	}
+
+	@Test
+	void testAdaptiveLatency() {
+		AdaptiveBatchPolicy policy = new AdaptiveBatchPolicy(BatchPolicy.defaults(), 1000, 1, 100, 0);
+
+		// 1 ID every 10ms
+		for (long now = 10; now <= 10000; now += 10) {
+			policy.recordArrivals(1, now);
+		}
+		assertEquals(1000, policy.getDelayMs());
+		assertEquals(100, policy.getBatchSize());
+
+		// Slow component calls eat into the time we can afford to wait
+		for (int i = 0; i < 100; i++) {
+			policy.recordLatency(800);
+		}
+		assertEquals(200, policy.getDelayMs());
+		assertEquals(20, policy.getBatchSize());
+	}
+}
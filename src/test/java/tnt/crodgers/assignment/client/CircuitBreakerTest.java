@@ -0,0 +1,120 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+	@Test
+	void testOpensOnFailureRate() {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 5000, 4, 4, 60000);
+		breaker.record(breaker.tryAcquire(), 10, true);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		breaker.record(breaker.tryAcquire(), 10, true);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+		// 2 of the 4 calls failed
+		breaker.record(breaker.tryAcquire(), 10, false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertTrue(breaker.isRejecting());
+		assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+	}
+
+	@Test
+	void testSlowCallsFail() {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 100, 100, 2, 2, 60000);
+		breaker.record(breaker.tryAcquire(), 100, true);
+		breaker.record(breaker.tryAcquire(), 500, true);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	@Test
+	void testWindowSlides() {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 5000, 4, 4, 60000);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		for (int i = 0; i < 6; i++) {
+			breaker.record(breaker.tryAcquire(), 10, true);
+		}
+		// The early failure has slid out of the window, leaving 1/4
+		breaker.record(breaker.tryAcquire(), 10, false);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	void testUnansweredProbeReopens() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 20, 1, 1, 20);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		Thread.sleep(30);
+		assertNotEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		// The probe is never answered, so the breaker gives up on it rather than staying half-open
+		Thread.sleep(30);
+		assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertTrue(breaker.isRejecting());
+	}
+
+	@Test
+	void testHalfOpenProbe() {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 5000, 1, 1, 0);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		// The open period has passed, so exactly one probe is allowed
+		assertFalse(breaker.isRejecting());
+		long probe = breaker.tryAcquire();
+		assertNotEquals(CircuitBreaker.NO_PERMIT, probe);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+
+		breaker.record(probe, 10, false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		probe = breaker.tryAcquire();
+		breaker.record(probe, 10, true);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertNotEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+	}
+
+	@Test
+	void testStragglersIgnored() {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 5000, 2, 2, 0);
+		long straggler = breaker.tryAcquire();
+		breaker.record(breaker.tryAcquire(), 10, false);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		// A call made before the breaker opened doesn't decide in place of the probe
+		long probe = breaker.tryAcquire();
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.record(straggler, 10, true);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.record(straggler, 10, false);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		breaker.record(probe, 10, true);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+		// Nor does it count towards the window cleared on closing
+		breaker.record(straggler, 10, false);
+		breaker.record(probe, 10, false);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	void testAbandonedProbe() {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 5000, 1, 1, 0);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		long probe = breaker.tryAcquire();
+		assertNotEquals(CircuitBreaker.NO_PERMIT, probe);
+		breaker.abandon(probe);
+
+		// The probe can be granted again
+		assertNotEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+	}
+}
@@ -0,0 +1,75 @@
+package tnt.crodgers.assignment.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.handler.timeout.ReadTimeoutException;
+import reactor.core.publisher.Mono;
+
+class ClientTest {
+
+	/** Answers every call with the given body, vs making it */
+	private static class StubClient extends Client {
+		private final Mono<byte[]> body;
+
+		StubClient(Mono<byte[]> body) {
+			super("shipments");
+			this.body = body;
+		}
+
+		@Override
+		protected Mono<byte[]> getCaller(String qValue) {
+			return body;
+		}
+	}
+
+	@Test
+	void testEmptyBody() {
+		ResponseHandler handler = mock(ResponseHandler.class);
+		UUID callId = UUID.randomUUID();
+		new StubClient(Mono.empty()).call("A", handler, callId);
+
+		// e.g. a 204 still answers the batch, as with a failure
+		verify(handler, times(1)).handleResponse(eq(callId), eq("A"), (byte[]) isNull());
+	}
+
+	@Test
+	void testBody() {
+		ResponseHandler handler = mock(ResponseHandler.class);
+		UUID callId = UUID.randomUUID();
+		byte[] body = "{\"A\": \"box\"}".getBytes(StandardCharsets.UTF_8);
+		new StubClient(Mono.just(body)).call("A", handler, callId);
+
+		verify(handler, times(1)).handleResponse(callId, "A", body);
+	}
+
+	@Test
+	void testError() {
+		ResponseHandler handler = mock(ResponseHandler.class);
+		UUID callId = UUID.randomUUID();
+		new StubClient(Mono.error(new IllegalStateException("down"))).call("A", handler, callId);
+
+		verify(handler, times(1)).handleResponse(any(UUID.class), eq("A"), (byte[]) isNull());
+	}
+
+	@Test
+	void testTimeout() {
+		ResponseHandler handler = mock(ResponseHandler.class);
+		UUID callId = UUID.randomUUID();
+		// As wrapped by the WebClient
+		new StubClient(Mono.error(new IllegalStateException(ReadTimeoutException.INSTANCE))).call("A", handler, callId);
+
+		verify(handler, times(1)).handleTimeout(callId, "A");
+		verify(handler, never()).handleResponse(any(UUID.class), any(String.class), any(byte[].class));
+	}
+}
@@ -0,0 +1,80 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimitTest {
+
+	private static final long MS = 1_000_000;
+
+	@AfterEach
+	void clearProperties() {
+		System.clearProperty("client.test.limit.adaptive");
+		System.clearProperty("client.test.batch.max.inflight");
+	}
+
+	@Test
+	void testFixed() {
+		BatchPolicy policy = BatchPolicy.forResource("test");
+		assertFalse(policy.getConcurrencyLimit() instanceof GradientConcurrencyLimit);
+		assertEquals(10, policy.getMaxInFlight());
+		assertEquals(Integer.MAX_VALUE, new ConcurrencyLimit(0).getLimit());
+	}
+
+	@Test
+	void testConfiguredAdaptive() {
+		System.setProperty("client.test.limit.adaptive", "true");
+		System.setProperty("client.test.batch.max.inflight", "4");
+		BatchPolicy policy = BatchPolicy.forResource("test");
+		assertTrue(policy.getConcurrencyLimit() instanceof GradientConcurrencyLimit);
+		assertEquals(4, policy.getMaxInFlight());
+	}
+
+	@Test
+	void testGrowsWhileLatencyHolds() {
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(10, 1, 100, 1.5);
+		for (int i = 0; i < 200; i++) {
+			limit.record(50 * MS, limit.getLimit(), true);
+		}
+		assertEquals(100, limit.getLimit());
+	}
+
+	@Test
+	void testIgnoresLatencyWhenNotLimiting() {
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(10, 1, 100, 1.5);
+		for (int i = 0; i < 50; i++) {
+			limit.record(50 * MS, 1, true);
+		}
+		assertEquals(10, limit.getLimit());
+	}
+
+	@Test
+	void testShrinksAsLatencyClimbs() {
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(50, 1, 100, 1.5);
+		for (int i = 0; i < 20; i++) {
+			limit.record(50 * MS, limit.getLimit(), true);
+		}
+		int before = limit.getLimit();
+
+		// The component is now queueing calls, taking 10x as long
+		for (int i = 0; i < 20; i++) {
+			limit.record(500 * MS, limit.getLimit(), true);
+		}
+		assertTrue(limit.getLimit() < before / 2, limit.toString());
+	}
+
+	@Test
+	void testBacksOffOnFailure() {
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(10, 2, 100, 1.5);
+		limit.record(50 * MS, 10, false);
+		assertEquals(9, limit.getLimit());
+		for (int i = 0; i < 50; i++) {
+			limit.record(50 * MS, 10, false);
+		}
+		assertEquals(2, limit.getLimit());
+	}
+}
@@ -0,0 +1,29 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class ConnectionPoolsTest {
+
+	@Test
+	void testHostOf() {
+		assertEquals("http://localhost:8090", ConnectionPools.hostOf("http://localhost:8090"));
+		assertEquals("http://localhost:8090", ConnectionPools.hostOf("http://localhost:8090/base/"));
+		assertEquals("http://example.com:80", ConnectionPools.hostOf("http://example.com"));
+		assertEquals("https://example.com:443", ConnectionPools.hostOf("https://example.com"));
+	}
+
+	@Test
+	void testSharedPerHost() {
+		Duration timeout = Duration.ofSeconds(1);
+		assertSame(ConnectionPools.forUrl("http://localhost:18090", timeout),
+				ConnectionPools.forUrl("http://localhost:18090/", timeout));
+		assertNotSame(ConnectionPools.forUrl("http://localhost:18090", timeout),
+				ConnectionPools.forUrl("http://localhost:18091", timeout));
+	}
+}
@@ -0,0 +1,75 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FlushSchedulerTest {
+
+	@Test
+	void testFire() throws Exception {
+		final FlushScheduler scheduler = new FlushScheduler("test");
+		final CountDownLatch latch = new CountDownLatch(1);
+		scheduler.schedule(latch::countDown, 10);
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertEquals(1, scheduler.getScheduledCount());
+		assertEquals(1, scheduler.getFiredCount());
+		assertEquals(0, scheduler.getCancelledCount());
+	}
+
+	@Test
+	void testCancel() throws Exception {
+		final FlushScheduler scheduler = new FlushScheduler("test");
+		final AtomicInteger runs = new AtomicInteger();
+		ScheduledFuture<?> deadline = scheduler.schedule(runs::incrementAndGet, 50);
+		scheduler.cancel(deadline);
+
+		Thread.sleep(100);
+		assertEquals(0, runs.get());
+		assertEquals(1, scheduler.getCancelledCount());
+		assertEquals(0, scheduler.getPendingCount());
+	}
+
+	@Test
+	void testNoThreadChurn() throws Exception {
+		final FlushScheduler scheduler = new FlushScheduler("test");
+		final CountDownLatch latch = new CountDownLatch(100);
+		for (int i = 0; i < 1000; i++) {
+			ScheduledFuture<?> deadline = scheduler.schedule(latch::countDown, 1);
+			if (i % 10 != 0) {
+				scheduler.cancel(deadline);
+			}
+		}
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertEquals(1, scheduler.getThreadsCreated());
+		assertEquals(1000, scheduler.getScheduledCount());
+	}
+
+	@Test
+	void testMetrics() throws Exception {
+		final MeterRegistry registry = new SimpleMeterRegistry();
+		final FlushScheduler scheduler = new FlushScheduler("test").monitor(registry);
+		final CountDownLatch latch = new CountDownLatch(1);
+		scheduler.schedule(latch::countDown, 1);
+		scheduler.cancel(scheduler.schedule(latch::countDown, 60000));
+		scheduler.schedule(latch::countDown, 60000);
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertEquals(1, registry.get("aggregation.scheduler.threads").tag("scheduler", "test").functionCounter().count());
+		assertEquals(3, registry.get("aggregation.scheduler.scheduled").functionCounter().count());
+		assertEquals(1, registry.get("aggregation.scheduler.cancelled").functionCounter().count());
+		assertEquals(1, registry.get("aggregation.scheduler.fired").functionCounter().count());
+		assertEquals(1, registry.get("aggregation.scheduler.pending").gauge().value());
+	}
+}
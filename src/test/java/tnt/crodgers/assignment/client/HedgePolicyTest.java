@@ -0,0 +1,66 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HedgePolicyTest {
+
+	@Test
+	void testDisabled() {
+		HedgePolicy policy = HedgePolicy.forResource("test");
+		for (int i = 0; i < 100; i++) {
+			policy.recordLatency(50);
+		}
+		assertEquals(-1, policy.getDelayMs());
+		assertFalse(policy.tryHedge());
+	}
+
+	@Test
+	void testPercentileDelay() {
+		HedgePolicy policy = new HedgePolicy(90, 10, 10);
+		// Not enough calls seen to judge what's slow
+		for (int i = 1; i < 20; i++) {
+			policy.recordLatency(i * 10);
+		}
+		assertEquals(-1, policy.getDelayMs());
+
+		policy.recordLatency(200);
+		assertEquals(180, policy.getDelayMs());
+	}
+
+	@Test
+	void testMinDelay() {
+		HedgePolicy policy = new HedgePolicy(90, 10, 10);
+		for (int i = 0; i < 20; i++) {
+			policy.recordLatency(1);
+		}
+		assertEquals(10, policy.getDelayMs());
+	}
+
+	@Test
+	void testBudget() {
+		HedgePolicy policy = new HedgePolicy(90, 10, 10);
+		for (int i = 0; i < 25; i++) {
+			policy.recordLatency(50);
+		}
+		// 10% of 25 calls
+		assertTrue(policy.tryHedge());
+		assertTrue(policy.tryHedge());
+		assertFalse(policy.tryHedge());
+	}
+
+	@Test
+	void testRefund() {
+		HedgePolicy policy = new HedgePolicy(90, 100, 10);
+		policy.recordLatency(10);
+		assertTrue(policy.tryHedge());
+		assertFalse(policy.tryHedge());
+
+		// A hedge not made after all is not charged for
+		policy.refund();
+		assertTrue(policy.tryHedge());
+	}
+}
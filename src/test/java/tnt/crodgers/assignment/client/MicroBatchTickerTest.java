@@ -0,0 +1,36 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class MicroBatchTickerTest {
+
+	@Test
+	void testTicksFlushEveryClient() throws Exception {
+		MicroBatchTicker ticker = new MicroBatchTicker(new FlushScheduler("test"), 10);
+		CountDownLatch first = new CountDownLatch(3), second = new CountDownLatch(3);
+		ticker.register(first::countDown);
+		ticker.register(second::countDown);
+
+		assertTrue(first.await(1, TimeUnit.SECONDS));
+		assertTrue(second.await(1, TimeUnit.SECONDS));
+		assertTrue(ticker.untilNextTickMs() <= 10);
+	}
+
+	@Test
+	void testDisabled() throws Exception {
+		MicroBatchTicker ticker = MicroBatchTicker.disabled();
+		CountDownLatch ticks = new CountDownLatch(1);
+		ticker.register(ticks::countDown);
+
+		assertFalse(ticks.await(50, TimeUnit.MILLISECONDS));
+		assertEquals(Long.MAX_VALUE, ticker.untilNextTickMs());
+		assertFalse(MicroBatchTicker.shared().isEnabled());
+	}
+}
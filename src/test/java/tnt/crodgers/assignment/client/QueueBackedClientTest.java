@@ -0,0 +1,580 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import tnt.crodgers.assignment.service.aggregation.AggregationResponse;
+
+class QueueBackedClientTest {
+
+	private final Client mockClient = mock(Client.class);
+
+	private final FlushScheduler scheduler = new FlushScheduler("test");
+
+	private Set<String> ids(int count) {
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < count; i++) {
+			ids.add(Integer.toString(i));
+		}
+		return ids;
+	}
+
+	private AggregationResponse response(Set<String> shipments) {
+		return new AggregationResponse(Collections.singletonMap("shipments", shipments));
+	}
+
+	@Test
+	void testDrainFullBatches() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 60000, true, 0))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(12);
+		client.request(ids, response(ids));
+
+		// Two full batches go immediately; the remaining 2 IDs await their deadline
+		ArgumentCaptor<String> qValues = ArgumentCaptor.forClass(String.class);
+		verify(mockClient, times(2)).call(qValues.capture(), any(ResponseHandler.class), any(UUID.class));
+		for (String batch : qValues.getAllValues()) {
+			assertEquals(5, batch.split(",").length);
+		}
+	}
+
+	@Test
+	void testDrainOnDeadline() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 50, true, 0))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(12);
+		client.request(ids, response(ids));
+
+		verify(mockClient, timeout(1000).times(3)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+	}
+
+	@Test
+	void testCallerDeadlineFlushesEarly() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 60000, true, 0))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(1);
+		client.request(ids, response(ids));
+		verify(mockClient, times(0)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+
+		// A caller that can't wait for the batch delay brings the deadline forward for everything queued
+		Set<String> urgent = ids(2);
+		client.request(urgent, new AggregationResponse(Collections.singletonMap("shipments", urgent), 50));
+		ArgumentCaptor<String> qValues = ArgumentCaptor.forClass(String.class);
+		verify(mockClient, timeout(1000).times(1)).call(qValues.capture(), any(ResponseHandler.class), any(UUID.class));
+		assertEquals(2, qValues.getValue().split(",").length);
+	}
+
+	@Test
+	void testNoDrain() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 60000, false, 0))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(12);
+		client.request(ids, response(ids));
+
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+	}
+
+	@Test
+	void testMaxInFlight() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 60000, true, 1))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(12);
+		client.request(ids, response(ids));
+
+		ArgumentCaptor<String> qValues = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(qValues.capture(), any(ResponseHandler.class), callIds.capture());
+
+		// The response frees up the slot for the next full batch
+		client.handleResponse(callIds.getValue(), qValues.getValue(), "{}");
+		verify(mockClient, times(2)).call(qValues.capture(), any(ResponseHandler.class), callIds.capture());
+		List<String> batches = qValues.getAllValues();
+		assertEquals(5, batches.get(batches.size() - 1).split(",").length);
+	}
+
+	@Test
+	void testOverduePartialBatchSentOnRelease() throws Exception {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 300, true, 1))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(7);
+		client.request(ids, response(ids));
+
+		ArgumentCaptor<String> qValues = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(qValues.capture(), any(ResponseHandler.class), callIds.capture());
+
+		// The deadline passes while the only slot is taken, so the partial batch goes as soon as it frees, vs after another delay
+		Thread.sleep(400);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+		client.handleResponse(callIds.getValue(), qValues.getValue(), "{}");
+		verify(mockClient, times(2)).call(qValues.capture(), any(ResponseHandler.class), callIds.capture());
+		List<String> batches = qValues.getAllValues();
+		assertEquals(2, batches.get(batches.size() - 1).split(",").length);
+	}
+
+	@Test
+	void testNoDeadlineSpinWhileBlocked() throws Exception {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 300, true, 1))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(5);
+		client.request(ids, response(ids));
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), callIds.capture());
+
+		// The caller's deadline is due while the only slot is taken, which mustn't re-arm the flush over and over
+		Set<String> urgent = Collections.singleton("urgent");
+		client.request(urgent, new AggregationResponse(Collections.singletonMap("shipments", urgent), 20));
+		Thread.sleep(200);
+		assertTrue(scheduler.getFiredCount() <= 2, scheduler.getFiredCount() + " flushes fired");
+
+		client.handleResponse(callIds.getValue(), String.join(",", ids), "{}");
+		verify(mockClient, times(1)).call(eq("urgent"), any(ResponseHandler.class), any(UUID.class));
+	}
+
+	@Test
+	void testCoalesceInFlight() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(1, 60000, true, 0))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(1);
+		AggregationResponse first = response(ids);
+		AggregationResponse second = response(ids);
+		client.request(ids, first);
+		client.request(ids, second);
+
+		// The second request rides on the first's component call
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), callIds.capture());
+		client.handleResponse(callIds.getValue(), "0", "{\"0\": \"box\"}");
+		assertEquals("box", first.getData("shipments").get("0"));
+		assertEquals("box", second.getData("shipments").get("0"));
+	}
+
+	@Test
+	void testOmittedIds() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(2, 60000, true, 0))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(2);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), callIds.capture());
+		client.handleResponse(callIds.getValue(), "0,1", "{\"0\": \"box\"}");
+		assertEquals("box", response.getData("shipments").get("0"));
+		assertTrue(response.getData("shipments").containsKey("1"));
+		assertNull(response.getData("shipments").get("1"));
+	}
+
+	@Test
+	void testCacheHit() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(1, 60000, true, 0))
+				.cache(ResponseCache.bySize(60000, 100))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(1);
+		client.request(ids, response(ids));
+
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), callIds.capture());
+		client.handleResponse(callIds.getValue(), "0", "{\"0\": \"box\"}");
+
+		// Answered straight from the cache, without another component call
+		AggregationResponse cached = response(ids);
+		client.request(ids, cached);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+		assertEquals("box", cached.getData("shipments").get("0"));
+	}
+
+	@Test
+	void testUnparsableResponse() {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(2, 60000, true, 0))
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(2);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), callIds.capture());
+		client.handleResponse(callIds.getValue(), "0,1", "{\"0\": [\"box\"], \"1\": ");
+		assertNull(response.getData("shipments"));
+		assertNotNull(response.whenPopulated().block(Duration.ZERO));
+	}
+
+	@Test
+	void testRawPassthrough() throws Exception {
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(3, 60000, true, 0))
+				.raw(true)
+				.scheduler(scheduler)
+				.build();
+		Set<String> ids = ids(3);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), callIds.capture());
+		client.handleResponse(callIds.getValue(), "0,1,2", "{\"0\": [\"box\", \"pallet\"], \"1\": \"envel\\\"ope\", \"2\": null}");
+
+		assertEquals(new RawValue("[\"box\", \"pallet\"]"), response.getData("shipments").get("0"));
+		assertEquals(new RawValue("\"envel\\\"ope\""), response.getData("shipments").get("1"));
+		assertNull(response.getData("shipments").get("2"));
+		assertEquals("{\"shipments\":{\"0\":[\"box\", \"pallet\"],\"1\":\"envel\\\"ope\",\"2\":null},\"pricing\":null,\"track\":null}",
+				new ObjectMapper().writeValueAsString(response));
+	}
+
+	@Test
+	void testMetrics() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 60000, true, 0))
+				.scheduler(scheduler)
+				.metrics(new ClientMetrics("shipments", registry))
+				.build();
+		Set<String> ids = ids(7);
+		client.request(ids, response(ids));
+		client.request(ids(1), response(ids(1)));
+
+		ArgumentCaptor<String> qValues = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(qValues.capture(), any(ResponseHandler.class), callIds.capture());
+		assertEquals(1, registry.get("aggregation.client.batches").tag("reason", "threshold").counter().count());
+		assertEquals(5, registry.get("aggregation.client.batch.size").summary().totalAmount());
+		assertEquals(2, registry.get("aggregation.client.queue.depth").gauge().value());
+		assertEquals(1, registry.get("aggregation.client.inflight.batches").gauge().value());
+
+		client.handleResponse(callIds.getValue(), qValues.getValue(), (byte[]) null);
+		assertEquals(1, registry.get("aggregation.client.calls").tag("outcome", "error").timer().count());
+		assertEquals(0, registry.get("aggregation.client.inflight.batches").gauge().value());
+	}
+
+	@Test
+	void testBreakerSheds() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(2, 60000, true, 0))
+				.scheduler(scheduler)
+				.metrics(new ClientMetrics("shipments", registry))
+				.breaker(new CircuitBreaker("shipments", 50, 5000, 1, 1, 60000))
+				.build();
+		Set<String> ids = ids(3);
+		AggregationResponse queued = response(ids);
+		client.request(ids, queued);
+
+		ArgumentCaptor<String> qValues = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, times(1)).call(qValues.capture(), any(ResponseHandler.class), callIds.capture());
+
+		// The failed call opens the breaker, which answers the ID still queued without awaiting its deadline
+		client.handleResponse(callIds.getValue(), qValues.getValue(), (byte[]) null);
+		assertNull(queued.getData("shipments"));
+		assertNotNull(queued.whenPopulated().block(Duration.ZERO));
+
+		// New requests are answered immediately, without a component call
+		Set<String> more = ids(2);
+		AggregationResponse rejected = response(more);
+		client.request(more, rejected);
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+		assertNotNull(rejected.whenPopulated().block(Duration.ZERO));
+		assertEquals(3, registry.get("aggregation.client.shed").counter().count());
+		assertEquals(2, registry.get("aggregation.client.breaker.state").gauge().value());
+	}
+
+	@Test
+	void testHedgeSlowBatch() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		HedgePolicy hedging = new HedgePolicy(50, 10, 10);
+		for (int i = 0; i < 20; i++) {
+			hedging.recordLatency(20);
+		}
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(1, 60000, true, 0))
+				.scheduler(scheduler)
+				.metrics(new ClientMetrics("shipments", registry))
+				.hedging(hedging)
+				.build();
+		Set<String> ids = ids(1);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		// Unanswered after the median latency, so the same batch is requested again
+		ArgumentCaptor<String> qValues = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<UUID> callIds = ArgumentCaptor.forClass(UUID.class);
+		verify(mockClient, timeout(1000).times(2)).call(qValues.capture(), any(ResponseHandler.class), callIds.capture());
+		assertEquals(qValues.getAllValues().get(0), qValues.getAllValues().get(1));
+		assertEquals(1, registry.get("aggregation.client.hedges").counter().count());
+
+		// The hedge answers first; the original call's (failed) response is ignored
+		client.handleResponse(callIds.getAllValues().get(1), "0", "{\"0\": \"box\"}");
+		assertEquals("box", response.getData("shipments").get("0"));
+		client.handleResponse(callIds.getAllValues().get(0), "0", (byte[]) null);
+		assertEquals("box", response.getData("shipments").get("0"));
+		assertEquals(1, registry.get("aggregation.client.calls").tag("outcome", "success").timer().count());
+		assertEquals(0, registry.get("aggregation.client.inflight.batches").gauge().value());
+	}
+
+	@Test
+	void testNoHedgeOfProbe() throws Exception {
+		HedgePolicy hedging = new HedgePolicy(50, 10, 10);
+		for (int i = 0; i < 20; i++) {
+			hedging.recordLatency(20);
+		}
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 5000, 1, 1, 0);
+		breaker.record(breaker.tryAcquire(), 10, false);
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(1, 60000, true, 0))
+				.scheduler(scheduler)
+				.breaker(breaker)
+				.hedging(hedging)
+				.build();
+		Set<String> ids = ids(1);
+		client.request(ids, response(ids));
+
+		// The batch is the half-open breaker's probe, so isn't duplicated however slow it is
+		Thread.sleep(200);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+		assertTrue(hedging.tryHedge());
+	}
+
+	@Test
+	void testRetryIsolatesPoisonId() {
+		// The component fails any call including ID 2
+		doAnswer(invocation -> {
+			String qValues = invocation.getArgument(0);
+			ResponseHandler handler = invocation.getArgument(1);
+			UUID callId = invocation.getArgument(2);
+			if (qValues.contains("2")) {
+				handler.handleResponse(callId, qValues, (byte[]) null);
+			} else {
+				StringBuilder json = new StringBuilder("{");
+				for (String id : qValues.split(",")) {
+					json.append(json.length() == 1 ? "" : ",").append('"').append(id).append("\": \"box\"");
+				}
+				handler.handleResponse(callId, qValues, json.append('}').toString());
+			}
+			return null;
+		}).when(mockClient).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+
+		MeterRegistry registry = new SimpleMeterRegistry();
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(4, 60000, true, 0))
+				.scheduler(scheduler)
+				.metrics(new ClientMetrics("shipments", registry))
+				.retries(new RetryPolicy(2, 1, 1))
+				.build();
+		Set<String> ids = ids(4);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		assertNotNull(response.whenPopulated().block(Duration.ofSeconds(5)));
+		assertEquals("box", response.getData("shipments").get("0"));
+		assertEquals("box", response.getData("shipments").get("1"));
+		assertEquals("box", response.getData("shipments").get("3"));
+		assertTrue(response.getData("shipments").containsKey("2"));
+		assertNull(response.getData("shipments").get("2"));
+		// Split in two, then the failing half in two again
+		assertEquals(4, registry.get("aggregation.client.retries").counter().count());
+	}
+
+	@Test
+	void testRetryExhaustionKeepsAnsweredIds() {
+		// The component fails the first call, then any including ID 2 or 3
+		AtomicInteger calls = new AtomicInteger();
+		doAnswer(invocation -> {
+			String qValues = invocation.getArgument(0);
+			ResponseHandler handler = invocation.getArgument(1);
+			UUID callId = invocation.getArgument(2);
+			if (calls.getAndIncrement() == 0 || qValues.contains("2")) {
+				handler.handleResponse(callId, qValues, (byte[]) null);
+			} else {
+				StringBuilder json = new StringBuilder("{");
+				for (String id : qValues.split(",")) {
+					json.append(json.length() == 1 ? "" : ",").append('"').append(id).append("\": \"box\"");
+				}
+				handler.handleResponse(callId, qValues, json.append('}').toString());
+			}
+			return null;
+		}).when(mockClient).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(4, 60000, true, 0))
+				.scheduler(scheduler)
+				.retries(new RetryPolicy(1, 1, 1))
+				.build();
+		Set<String> ids = ids(4);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		// Retries are exhausted with 2 and 3 yet to be isolated, but the other half's data survives them
+		assertNotNull(response.whenPopulated().block(Duration.ofSeconds(5)));
+		Map<String, Object> data = response.getData("shipments");
+		assertEquals("box", data.get("0"));
+		assertEquals("box", data.get("1"));
+		assertTrue(data.containsKey("2"));
+		assertNull(data.get("2"));
+		assertTrue(data.containsKey("3"));
+		assertNull(data.get("3"));
+	}
+
+	@Test
+	void testRetryRejectedByBreakerKeepsAnsweredIds() {
+		CircuitBreaker breaker = new CircuitBreaker("shipments", 50, 5000, 2, 2, 60000);
+		// The component fails the first call; the first retry succeeds, but by then the breaker has opened
+		AtomicInteger calls = new AtomicInteger();
+		doAnswer(invocation -> {
+			String qValues = invocation.getArgument(0);
+			ResponseHandler handler = invocation.getArgument(1);
+			UUID callId = invocation.getArgument(2);
+			if (calls.getAndIncrement() == 0) {
+				handler.handleResponse(callId, qValues, (byte[]) null);
+			} else {
+				breaker.record(breaker.tryAcquire(), 0, false);
+				breaker.record(breaker.tryAcquire(), 0, false);
+				handler.handleResponse(callId, qValues, "{\"" + qValues + "\": \"box\"}");
+			}
+			return null;
+		}).when(mockClient).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(2, 60000, true, 0))
+				.scheduler(scheduler)
+				.breaker(breaker)
+				.retries(new RetryPolicy(2, 1, 1))
+				.build();
+		Set<String> ids = ids(2);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		// The other half isn't resent, and goes without data alone
+		assertNotNull(response.whenPopulated().block(Duration.ofSeconds(5)));
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(2, calls.get());
+		Map<String, Object> data = response.getData("shipments");
+		assertNotNull(data);
+		assertEquals(2, data.size());
+		assertTrue(data.containsValue("box"));
+		assertTrue(data.containsValue(null));
+	}
+
+	@Test
+	void testNoRetryAfterTimeout() {
+		doAnswer(invocation -> {
+			ResponseHandler handler = invocation.getArgument(1);
+			handler.handleTimeout(invocation.getArgument(2), invocation.getArgument(0));
+			return null;
+		}).when(mockClient).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(2, 60000, true, 0))
+				.scheduler(scheduler)
+				.retries(new RetryPolicy(2, 1, 1))
+				.build();
+		Set<String> ids = ids(2);
+		AggregationResponse response = response(ids);
+		client.request(ids, response);
+
+		assertNotNull(response.whenPopulated().block(Duration.ofSeconds(5)));
+		assertNull(response.getData("shipments"));
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+	}
+
+	@Test
+	void testNoRetryPastDeadline() {
+		doAnswer(invocation -> {
+			ResponseHandler handler = invocation.getArgument(1);
+			handler.handleResponse(invocation.getArgument(2), invocation.getArgument(0), (byte[]) null);
+			return null;
+		}).when(mockClient).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+
+		QueueBackedClient client = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(2, 60000, true, 0))
+				.scheduler(scheduler)
+				.retries(new RetryPolicy(2, 1000, 1000))
+				.build();
+		Set<String> ids = ids(2);
+		// The caller won't wait out the backoff
+		AggregationResponse response = new AggregationResponse(Collections.singletonMap("shipments", ids), 200);
+		client.request(ids, response);
+
+		assertNotNull(response.whenPopulated().block(Duration.ofSeconds(5)));
+		assertNull(response.getData("shipments"));
+		verify(mockClient, times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+	}
+
+	@Test
+	void testTickFlushesResourcesTogether() {
+		MicroBatchTicker ticker = new MicroBatchTicker(scheduler, 50);
+		Client pricingClient = mock(Client.class);
+		QueueBackedClient shipments = QueueBackedClient.builder("shipments", mockClient)
+				.policy(new BatchPolicy(5, 60000, true, 0))
+				.scheduler(scheduler)
+				.ticker(ticker)
+				.build();
+		QueueBackedClient pricing = QueueBackedClient.builder("pricing", pricingClient)
+				.policy(new BatchPolicy(5, 60000, true, 0))
+				.scheduler(scheduler)
+				.metrics(new ClientMetrics("pricing", new SimpleMeterRegistry()))
+				.ticker(ticker)
+				.build();
+
+		// Partial batches go on the next tick, well ahead of their batch delay
+		Set<String> ids = ids(2);
+		Map<String, Set<String>> expected = new HashMap<>();
+		expected.put("shipments", ids);
+		expected.put("pricing", ids);
+		AggregationResponse response = new AggregationResponse(expected);
+		shipments.request(ids, response);
+		pricing.request(ids, response);
+		verify(mockClient, timeout(1000).times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+		verify(pricingClient, timeout(1000).times(1)).call(any(String.class), any(ResponseHandler.class), any(UUID.class));
+	}
+}
@@ -3,13 +3,21 @@ package tnt.crodgers.assignment.client;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
@@ -27,7 +35,7 @@ class RequestQueueTest {
 		assertEquals(0, queue.size());
 		assertFalse(queue.hasReachedThreshold());
 
-		AggregationResponse response = new AggregationResponse(new HashSet<>(), new HashSet<>(), new HashSet<>());
+		AggregationResponse response = new AggregationResponse(Collections.emptyMap());
 		queue.enqueue(setify("A,B,C,C,C"), response);
 		assertEquals(3, queue.size());
 		assertFalse(queue.hasReachedThreshold());
@@ -40,7 +48,7 @@ class RequestQueueTest {
 	@Test
 	void testFifo() {	
 		final RequestQueue queue = new RequestQueue();
-		AggregationResponse response = new AggregationResponse(new HashSet<>(), new HashSet<>(), new HashSet<>());
+		AggregationResponse response = new AggregationResponse(Collections.emptyMap());
 		queue.enqueue(setify("A"), response);
 		queue.enqueue(setify("B"), response);
 		queue.enqueue(setify("C,D"), response);
@@ -58,4 +66,94 @@ class RequestQueueTest {
 		assertNotNull(queue.dequeue().get("F"));
 	}
 
+	@Test
+	void testEarliestDeadlineFirst() {
+		final RequestQueue queue = new RequestQueue(new BatchPolicy(2, 5000));
+		AggregationResponse patient = new AggregationResponse(Collections.emptyMap());
+		AggregationResponse soon = new AggregationResponse(Collections.emptyMap(), 20000);
+		AggregationResponse sooner = new AggregationResponse(Collections.emptyMap(), 10000);
+		queue.enqueue(setify("A"), patient);
+		queue.enqueue(setify("B"), patient);
+		queue.enqueue(setify("C"), soon);
+		assertTrue(queue.earliestRemainingMs() <= 20000);
+
+		// A joins the more urgent waiter, so is promoted ahead of C
+		queue.enqueue(setify("A"), sooner);
+		assertTrue(queue.earliestRemainingMs() <= 10000);
+		assertEquals(3, queue.size());
+		Map<String, Collection<AggregationResponse>> dequeued = queue.dequeue();
+		assertEquals(setify("A,C"), dequeued.keySet());
+		assertEquals(new HashSet<>(Arrays.asList(patient, sooner)), new HashSet<>(dequeued.get("A")));
+
+		// Those without a deadline are last, in arrival order
+		assertEquals(Long.MAX_VALUE, queue.earliestRemainingMs());
+		assertEquals(setify("B"), queue.dequeue().keySet());
+		assertEquals(Long.MAX_VALUE, queue.earliestRemainingMs());
+	}
+
+	@Test
+	void testConcurrentEnqueueDequeue() throws Exception {
+		final RequestQueue queue = new RequestQueue();
+		final int threads = 8, idsPerThread = 1000;
+		final AtomicInteger waitersDequeued = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				final AggregationResponse response = new AggregationResponse(Collections.emptyMap());
+				futures.add(executor.submit(() -> {
+					// Every thread asks for the same IDs, so they contend on each one
+					for (int i = 0; i < idsPerThread; i++) {
+						queue.enqueue(setify(Integer.toString(i)), response);
+						waitersDequeued.addAndGet(countWaiters(queue, queue.dequeue()));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		while (queue.size() > 0) {
+			waitersDequeued.addAndGet(countWaiters(queue, queue.dequeue()));
+		}
+
+		// An ID may legitimately be re-queued after being completed, but no waiter may be lost or duplicated
+		assertEquals(threads * idsPerThread, waitersDequeued.get());
+		assertEquals(0, queue.inFlightSize());
+	}
+
+	private int countWaiters(RequestQueue queue, Map<String, Collection<AggregationResponse>> dequeued) {
+		int count = 0;
+		for (String id : dequeued.keySet()) {
+			Collection<AggregationResponse> waiters = queue.complete(id);
+			if (waiters != null) {
+				count += waiters.size();
+			}
+		}
+		return count;
+	}
+
+	@Test
+	void testCoalesceInFlight() {
+		final RequestQueue queue = new RequestQueue();
+		AggregationResponse first = new AggregationResponse(Collections.emptyMap());
+		AggregationResponse second = new AggregationResponse(Collections.emptyMap());
+		queue.enqueue(setify("A,B"), first);
+		queue.dequeue();
+		assertEquals(2, queue.inFlightSize());
+
+		// A is already being fetched, so only C needs queueing
+		queue.enqueue(setify("A,C"), second);
+		assertEquals(1, queue.size());
+		assertEquals(new HashSet<>(Arrays.asList(first, second)), new HashSet<>(queue.complete("A")));
+		assertEquals(new HashSet<>(Arrays.asList(first)), new HashSet<>(queue.complete("B")));
+		assertNull(queue.complete("A"));
+
+		// Once complete, A is fetched afresh
+		queue.enqueue(setify("A"), second);
+		assertEquals(2, queue.size());
+	}
+
 }
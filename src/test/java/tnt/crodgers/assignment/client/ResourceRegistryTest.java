@@ -0,0 +1,33 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class ResourceRegistryTest {
+
+	@Test
+	void testDefaults() {
+		assertEquals(Arrays.asList("shipments", "pricing", "track"), ResourceRegistry.shared().getNames());
+	}
+
+	@Test
+	void testSlots() {
+		ResourceRegistry registry = new ResourceRegistry(Arrays.asList("track", "customs"));
+		assertEquals(2, registry.size());
+		assertEquals(0, registry.slotOf("track"));
+		assertEquals(1, registry.slotOf("customs"));
+		assertEquals("customs", registry.name(1));
+		assertEquals(-1, registry.slotOf("shipments"));
+	}
+
+	@Test
+	void testInvalid() {
+		assertThrows(IllegalArgumentException.class, () -> new ResourceRegistry(Collections.emptyList()));
+		assertThrows(IllegalArgumentException.class, () -> new ResourceRegistry(Arrays.asList("track", "track")));
+	}
+}
@@ -0,0 +1,85 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ResponseCacheTest {
+
+	@AfterEach
+	void clearProperties() {
+		System.clearProperty("client.test.cache.ttl.ms");
+	}
+
+	@Test
+	void testDisabledByDefault() {
+		ResponseCache cache = ResponseCache.forResource("test");
+		assertFalse(cache.isEnabled());
+		cache.put("A", "value", 7);
+		assertNull(cache.get("A"));
+	}
+
+	@Test
+	void testConfigured() {
+		System.setProperty("client.test.cache.ttl.ms", "1000");
+		assertTrue(ResponseCache.forResource("test").isEnabled());
+	}
+
+	@Test
+	void testHitsAndMisses() {
+		ResponseCache cache = ResponseCache.bySize(60000, 100);
+		assertNull(cache.get("A"));
+		cache.put("A", "value", 7);
+		cache.put("B", null, 4);
+		assertEquals(Optional.of("value"), cache.get("A"));
+		// Null data is cached as such, as distinct from a miss
+		assertEquals(Optional.empty(), cache.get("B"));
+
+		assertEquals(2, cache.stats().hitCount());
+		assertEquals(1, cache.stats().missCount());
+	}
+
+	@Test
+	void testWeight() {
+		// A raw value is weighed by its own JSON, vs that of its toString()
+		assertEquals(13, ResponseCache.weigh(new RawValue("{\"box\": true}"), 99));
+		// A decoded value by the JSON it was read from
+		assertEquals(13, ResponseCache.weigh(Collections.singletonMap("box", true), 13));
+		assertEquals(4, ResponseCache.weigh(null, 4));
+	}
+
+	@Test
+	void testExpiry() throws Exception {
+		ResponseCache cache = ResponseCache.bySize(10, 100);
+		cache.put("A", "value", 7);
+		Thread.sleep(50);
+		assertNull(cache.get("A"));
+	}
+
+	@Test
+	void testMetrics() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		ResponseCache cache = ResponseCache.bySize(60000, 100);
+		new ClientMetrics("shipments", registry).monitor(cache);
+		cache.put("A", "value", 7);
+		cache.get("A");
+		cache.get("B");
+
+		assertEquals(1, registry.get("cache.gets").tags("resource", "shipments", "result", "hit").functionCounter().count());
+		assertEquals(1, registry.get("cache.gets").tags("cache", "aggregation.client.cache", "result", "miss")
+				.functionCounter().count());
+		assertEquals(1, registry.get("cache.size").tag("resource", "shipments").gauge().value());
+	}
+}
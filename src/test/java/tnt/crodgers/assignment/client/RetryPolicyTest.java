@@ -0,0 +1,29 @@
+package tnt.crodgers.assignment.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RetryPolicyTest {
+
+	@Test
+	void testDefaults() {
+		RetryPolicy policy = RetryPolicy.forResource("test");
+		assertEquals(3, policy.getMaxRetries());
+		assertEquals(0, RetryPolicy.disabled().getMaxRetries());
+	}
+
+	@Test
+	void testJitteredBackoff() {
+		RetryPolicy policy = new RetryPolicy(5, 100, 1000);
+		for (int i = 0; i < 100; i++) {
+			long first = policy.getBackoffMs(1);
+			assertTrue(first >= 50 && first <= 100, Long.toString(first));
+			long third = policy.getBackoffMs(3);
+			assertTrue(third >= 200 && third <= 400, Long.toString(third));
+			long capped = policy.getBackoffMs(10);
+			assertTrue(capped >= 500 && capped <= 1000, Long.toString(capped));
+		}
+	}
+}
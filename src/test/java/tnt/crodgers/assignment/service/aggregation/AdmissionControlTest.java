@@ -0,0 +1,39 @@
+package tnt.crodgers.assignment.service.aggregation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionControlTest {
+
+	@Test
+	void testLimit() {
+		AdmissionControl admission = new AdmissionControl(2, 1);
+		assertTrue(admission.tryAcquire());
+		assertTrue(admission.tryAcquire());
+		assertFalse(admission.tryAcquire());
+		assertEquals(2, admission.getPending());
+
+		admission.release();
+		assertTrue(admission.tryAcquire());
+	}
+
+	@Test
+	void testNoLimit() {
+		AdmissionControl admission = new AdmissionControl(0, 1);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(admission.tryAcquire());
+		}
+	}
+
+	@Test
+	void testDefaults() {
+		AdmissionControl admission = AdmissionControl.fromProperties();
+		assertEquals(10000, admission.getMaxPending());
+		assertEquals(1, admission.getRetryAfterS());
+		assertThrows(IllegalArgumentException.class, () -> new AdmissionControl(-1, 1));
+	}
+}
@@ -2,32 +2,48 @@ package tnt.crodgers.assignment.service.aggregation;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.junit.jupiter.api.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.test.StepVerifier;
+import tnt.crodgers.assignment.client.ResourceRegistry;
+
 class AggregationResponseTest {
+
+	private static Map<String, Set<String>> expected(Set<String> shipments, Set<String> pricing, Set<String> track) {
+		Map<String, Set<String>> expected = new HashMap<>();
+		expected.put("shipments", shipments);
+		expected.put("pricing", pricing);
+		expected.put("track", track);
+		return expected;
+	}
 		
 	@Test
 	void testRejectUnexpected() {
-		AggregationResponse response = new AggregationResponse(new HashSet<>(Arrays.asList("A,B,C")),
-				new HashSet<>(Arrays.asList("A,B,C")),
-				new HashSet<>(Arrays.asList("A,B,C")));
-		assertEquals(null, response.getShipments());		
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A,B,C")), new HashSet<>(Arrays.asList("A,B,C")), new HashSet<>(Arrays.asList("A,B,C"))));
+		assertEquals(null, response.getData("shipments"));		
 		response.set("shipments", "D", 1);
-		assertEquals(null, response.getShipments());
+		assertEquals(null, response.getData("shipments"));
 		assertFalse(response.allResponsesReceived());
 	}
 
 	@Test
 	void testReset() {
-		AggregationResponse response = new AggregationResponse(new HashSet<>(Arrays.asList("A,B,C")),
-				new HashSet<>(Arrays.asList("A,B,C")),
-				new HashSet<>(Arrays.asList("A,B,C")));
-		assertEquals(null, response.getShipments());		
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A,B,C")), new HashSet<>(Arrays.asList("A,B,C")), new HashSet<>(Arrays.asList("A,B,C"))));
+		assertEquals(null, response.getData("shipments"));		
 		assertFalse(response.allResponsesReceived());
 
 		response.reset("shipments");
@@ -38,10 +54,8 @@ class AggregationResponseTest {
 
 	@Test
 	void testAllResponsesReceived() {
-		AggregationResponse response = new AggregationResponse(new HashSet<>(Arrays.asList("A")),
-				new HashSet<>(Arrays.asList("B")),
-				new HashSet<>(Arrays.asList("C")));
-		assertEquals(null, response.getShipments());		
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A")), new HashSet<>(Arrays.asList("B")), new HashSet<>(Arrays.asList("C"))));
+		assertEquals(null, response.getData("shipments"));		
 		assertFalse(response.allResponsesReceived());
 
 		response.set("shipments", "A", 1);
@@ -50,4 +64,105 @@ class AggregationResponseTest {
 		assertTrue(response.allResponsesReceived());
 	}
 
+	@Test
+	void testWhenPopulated() {
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A")), new HashSet<>(), new HashSet<>()));
+		StepVerifier.create(response.whenPopulated())
+				.then(() -> response.set("shipments", "A", 1))
+				.expectNext(response)
+				.verifyComplete();
+	}
+
+	@Test
+	void testWhenPopulatedNothingExpected() {
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(), new HashSet<>(), new HashSet<>()));
+		StepVerifier.create(response.whenPopulated())
+				.expectNext(response)
+				.verifyComplete();
+	}
+
+	@Test
+	void testExpire() throws Exception {
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A")), new HashSet<>(Arrays.asList("B")), new HashSet<>(Arrays.asList("C"))), 0);
+		assertEquals(0, response.remainingMs());
+		response.set("shipments", "A", 1);
+
+		// Data arriving after expiry is ignored, so the partial response stays as it was returned
+		response.expire();
+		response.set("pricing", "B", 1);
+		assertEquals(null, response.getData("pricing"));
+		assertEquals(new TreeSet<>(Arrays.asList("pricing", "track")), response.getIncomplete());
+		assertEquals("{\"shipments\":{\"A\":1},\"pricing\":null,\"track\":null,\"incomplete\":[\"pricing\",\"track\"]}",
+				new ObjectMapper().writeValueAsString(response));
+	}
+
+	@Test
+	void testNoDeadline() throws Exception {
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A")), new HashSet<>(), new HashSet<>()));
+		assertEquals(Long.MAX_VALUE, response.remainingMs());
+		response.set("shipments", "A", 1);
+		assertEquals("{\"shipments\":{\"A\":1},\"pricing\":null,\"track\":null}", new ObjectMapper().writeValueAsString(response));
+	}
+
+	@Test
+	void testPartialData() throws Exception {
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("C", "A", "B")), new HashSet<>(Arrays.asList("D")), new HashSet<>()));
+		response.set("shipments", "B", null);
+		response.set("shipments", "A", 1);
+		// A repeat is unexpected, so doesn't count towards completion
+		response.set("shipments", "A", 2);
+		assertEquals(2, response.getData("shipments").size());
+		assertFalse(response.allResponsesReceived());
+
+		response.set("pricing", "D", 1);
+		response.reset("pricing");
+		response.set("shipments", "C", 3);
+		assertTrue(response.allResponsesReceived());
+		assertEquals("{\"shipments\":{\"A\":1,\"B\":null,\"C\":3},\"pricing\":null,\"track\":null}", new ObjectMapper().writeValueAsString(response));
+	}
+
+	@Test
+	void testStream() {
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A", "B")), new HashSet<>(Arrays.asList("C")), new HashSet<>()));
+		response.set("pricing", "C", 1);
+		Map<String, Object> shipments = new HashMap<>();
+		shipments.put("A", 1);
+		shipments.put("B", 2);
+
+		// Resources are streamed as they complete, including those already complete; those never requested aren't streamed
+		StepVerifier.create(response.stream())
+				.expectNext(Collections.singletonMap("pricing", Collections.singletonMap("C", 1)))
+				.then(() -> response.set("shipments", "A", 1))
+				.expectNoEvent(Duration.ofMillis(10))
+				.then(() -> response.set("shipments", "B", 2))
+				.expectNext(Collections.singletonMap("shipments", shipments))
+				.verifyComplete();
+	}
+
+	@Test
+	void testStreamReset() {
+		AggregationResponse response = new AggregationResponse(expected(new HashSet<>(Arrays.asList("A")), new HashSet<>(), new HashSet<>()));
+		StepVerifier.create(response.stream())
+				.then(() -> response.reset("shipments"))
+				.expectNext(Collections.singletonMap("shipments", null))
+				.verifyComplete();
+
+		StepVerifier.create(new AggregationResponse(expected(new HashSet<>(), new HashSet<>(), new HashSet<>())).stream())
+				.verifyComplete();
+	}
+
+	@Test
+	void testRegisteredResources() throws Exception {
+		ResourceRegistry resources = new ResourceRegistry(Arrays.asList("track", "customs"));
+		AggregationResponse response = new AggregationResponse(resources,
+				Arrays.asList(new HashSet<>(Arrays.asList("A")), new HashSet<>(Arrays.asList("B"))), 30000);
+		response.set(resources.slotOf("customs"), "B", "cleared");
+		assertFalse(response.allResponsesReceived());
+		response.reset(resources.slotOf("track"));
+		assertTrue(response.allResponsesReceived());
+
+		// Fields follow the registry's order
+		assertEquals("{\"track\":null,\"customs\":{\"B\":\"cleared\"}}", new ObjectMapper().writeValueAsString(response));
+		assertThrows(IllegalArgumentException.class, () -> response.getData("shipments"));
+	}
 }
@@ -3,12 +3,15 @@ package tnt.crodgers.assignment.service.aggregation;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 
 import java.lang.reflect.Field;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,13 +45,16 @@ class RequestHandlerIntegrationTest {
 	
 	private RequestHandler handler = new RequestHandler();
 
+	/** Allows for the batching delay before under-threshold requests are issued */
+	private static final int QUEUE_DELAY_MS = 6000;
+
 	@BeforeEach
     void initService() throws Exception {
         MockitoAnnotations.openMocks(this);
 		handler = new RequestHandler();
-		mockClient(RequestHandler.shipmentsClient, mockClient);
-		mockClient(RequestHandler.pricingClient,   mockClient);
-		mockClient(RequestHandler.trackClient,     mockClient);
+		for (QueueBackedClient client : RequestHandler.clients) {
+			mockClient(client, mockClient);
+		}
     }
 
 	private void mockClient(QueueBackedClient clientWrapper, Client mockClient)
@@ -75,17 +81,18 @@ class RequestHandlerIntegrationTest {
 				"\"E\": null" +
 				"}";
 		callbackCaptor.getValue().handleResponse(shipmentsUuidCaptor.getValue(), ids, responseJson);
+		assertSame(aggregationResponse, aggregationResponse.whenPopulated().block(Duration.ofSeconds(1)));
 		
-		assertNull(aggregationResponse.getPricing());
-		assertNull(aggregationResponse.getTrack());
-		assertNotNull(aggregationResponse.getShipments());
-
-		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getShipments().keySet());
-		assertEquals(Arrays.asList("box", "box", "pallet"), aggregationResponse.getShipments().get("A"));
-		assertEquals(Arrays.asList("envelope"), aggregationResponse.getShipments().get("B"));
-		assertEquals(Arrays.asList("pallet"), aggregationResponse.getShipments().get("C"));
-		assertEquals(Arrays.asList("box"), aggregationResponse.getShipments().get("D"));
-		assertNull(aggregationResponse.getShipments().get("E"));
+		assertNull(aggregationResponse.getData("pricing"));
+		assertNull(aggregationResponse.getData("track"));
+		assertNotNull(aggregationResponse.getData("shipments"));
+
+		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getData("shipments").keySet());
+		assertEquals(Arrays.asList("box", "box", "pallet"), aggregationResponse.getData("shipments").get("A"));
+		assertEquals(Arrays.asList("envelope"), aggregationResponse.getData("shipments").get("B"));
+		assertEquals(Arrays.asList("pallet"), aggregationResponse.getData("shipments").get("C"));
+		assertEquals(Arrays.asList("box"), aggregationResponse.getData("shipments").get("D"));
+		assertNull(aggregationResponse.getData("shipments").get("E"));
 	}
 	
 	@Test
@@ -96,18 +103,18 @@ class RequestHandlerIntegrationTest {
 		params.put("shipments", ids);
 		AggregationResponse aggregationResponse = handler.get(params);
 
-		verify(mockClient).call(any(String.class), callbackCaptor.capture(), shipmentsUuidCaptor.capture());
+		verify(mockClient, timeout(QUEUE_DELAY_MS)).call(any(String.class), callbackCaptor.capture(), shipmentsUuidCaptor.capture());
 		String responseJson = "{" +
 				"\"A\": [\"box\", \"box\", \"pallet\"]" +
 				"}";
 		callbackCaptor.getValue().handleResponse(shipmentsUuidCaptor.getValue(), ids, responseJson);
 		
-		assertNull(aggregationResponse.getPricing());
-		assertNull(aggregationResponse.getTrack());
-		assertNotNull(aggregationResponse.getShipments());
+		assertNull(aggregationResponse.getData("pricing"));
+		assertNull(aggregationResponse.getData("track"));
+		assertNotNull(aggregationResponse.getData("shipments"));
 
-		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getShipments().keySet());
-		assertEquals(Arrays.asList("box", "box", "pallet"), aggregationResponse.getShipments().get("A"));
+		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getData("shipments").keySet());
+		assertEquals(Arrays.asList("box", "box", "pallet"), aggregationResponse.getData("shipments").get("A"));
 	}
 	
 	@Test
@@ -128,16 +135,16 @@ class RequestHandlerIntegrationTest {
 				"}";
 		callbackCaptor.getValue().handleResponse(trackUuidCaptor.getValue(), ids, responseJson);
 		
-		assertNull(aggregationResponse.getPricing());
-		assertNotNull(aggregationResponse.getTrack());
-		assertNull(aggregationResponse.getShipments());
-
-		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getTrack().keySet());
-		assertEquals("NEW", aggregationResponse.getTrack().get("1"));
-		assertNull(aggregationResponse.getTrack().get("2"));
-		assertEquals("NEW", aggregationResponse.getTrack().get("3"));
-		assertNull(aggregationResponse.getTrack().get("4"));
-		assertEquals("COLLECTING", aggregationResponse.getTrack().get("5"));
+		assertNull(aggregationResponse.getData("pricing"));
+		assertNotNull(aggregationResponse.getData("track"));
+		assertNull(aggregationResponse.getData("shipments"));
+
+		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getData("track").keySet());
+		assertEquals("NEW", aggregationResponse.getData("track").get("1"));
+		assertNull(aggregationResponse.getData("track").get("2"));
+		assertEquals("NEW", aggregationResponse.getData("track").get("3"));
+		assertNull(aggregationResponse.getData("track").get("4"));
+		assertEquals("COLLECTING", aggregationResponse.getData("track").get("5"));
 	}
 	
 	@Test
@@ -148,20 +155,20 @@ class RequestHandlerIntegrationTest {
 		params.put("track", ids);
 		AggregationResponse aggregationResponse = handler.get(params);
 
-		verify(mockClient).call(any(String.class), callbackCaptor.capture(), trackUuidCaptor.capture());
+		verify(mockClient, timeout(QUEUE_DELAY_MS)).call(any(String.class), callbackCaptor.capture(), trackUuidCaptor.capture());
 		String responseJson = "{" +
 				"\"1\": \"NEW\"," +
 				"\"2\": null" +
 				"}";
 		callbackCaptor.getValue().handleResponse(trackUuidCaptor.getValue(), ids, responseJson);
 		
-		assertNull(aggregationResponse.getPricing());
-		assertNotNull(aggregationResponse.getTrack());
-		assertNull(aggregationResponse.getShipments());
+		assertNull(aggregationResponse.getData("pricing"));
+		assertNotNull(aggregationResponse.getData("track"));
+		assertNull(aggregationResponse.getData("shipments"));
 
-		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getTrack().keySet());
-		assertEquals("NEW", aggregationResponse.getTrack().get("1"));
-		assertNull(aggregationResponse.getTrack().get("2"));
+		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getData("track").keySet());
+		assertEquals("NEW", aggregationResponse.getData("track").get("1"));
+		assertNull(aggregationResponse.getData("track").get("2"));
 	}
 	
 	@Test
@@ -182,16 +189,16 @@ class RequestHandlerIntegrationTest {
 				"}";
 		callbackCaptor.getValue().handleResponse(pricingUuidCaptor.getValue(), ids, responseJson);
 		
-		assertNotNull(aggregationResponse.getPricing());
-		assertNull(aggregationResponse.getTrack());
-		assertNull(aggregationResponse.getShipments());
-
-		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getPricing().keySet());
-		assertEquals("14.24209", aggregationResponse.getPricing().get("NL"));
-		assertNull(aggregationResponse.getPricing().get("PT"));
-		assertNull(aggregationResponse.getPricing().get("AU"));
-		assertNull(aggregationResponse.getPricing().get("AG"));
-		assertEquals("20.5034", aggregationResponse.getPricing().get("CN"));
+		assertNotNull(aggregationResponse.getData("pricing"));
+		assertNull(aggregationResponse.getData("track"));
+		assertNull(aggregationResponse.getData("shipments"));
+
+		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getData("pricing").keySet());
+		assertEquals("14.24209", aggregationResponse.getData("pricing").get("NL"));
+		assertNull(aggregationResponse.getData("pricing").get("PT"));
+		assertNull(aggregationResponse.getData("pricing").get("AU"));
+		assertNull(aggregationResponse.getData("pricing").get("AG"));
+		assertEquals("20.5034", aggregationResponse.getData("pricing").get("CN"));
 	}
 	
 	@Test
@@ -202,20 +209,20 @@ class RequestHandlerIntegrationTest {
 		params.put("pricing", ids);
 		AggregationResponse aggregationResponse = handler.get(params);
 
-		verify(mockClient).call(any(String.class), callbackCaptor.capture(), pricingUuidCaptor.capture());
+		verify(mockClient, timeout(QUEUE_DELAY_MS)).call(any(String.class), callbackCaptor.capture(), pricingUuidCaptor.capture());
 		String responseJson = "{" +
 				"\"NL\": \"14.24209\"," +
 				"\"CN\": \"20.5034\"" +
 				"}";
 		callbackCaptor.getValue().handleResponse(pricingUuidCaptor.getValue(), ids, responseJson);
 		
-		assertNotNull(aggregationResponse.getPricing());
-		assertNull(aggregationResponse.getTrack());
-		assertNull(aggregationResponse.getShipments());
+		assertNotNull(aggregationResponse.getData("pricing"));
+		assertNull(aggregationResponse.getData("track"));
+		assertNull(aggregationResponse.getData("shipments"));
 
-		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getPricing().keySet());
-		assertEquals("14.24209", aggregationResponse.getPricing().get("NL"));
-		assertEquals("20.5034", aggregationResponse.getPricing().get("CN"));
+		assertEquals(new HashSet<>(Arrays.asList(ids.split(","))), aggregationResponse.getData("pricing").keySet());
+		assertEquals("14.24209", aggregationResponse.getData("pricing").get("NL"));
+		assertEquals("20.5034", aggregationResponse.getData("pricing").get("CN"));
 	}
 
 	@Test
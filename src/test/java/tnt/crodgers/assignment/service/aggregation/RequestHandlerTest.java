@@ -1,26 +1,53 @@
 package tnt.crodgers.assignment.service.aggregation;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
-import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.mockito.Mockito.when;
 
 import java.util.HashMap;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
 
 import tnt.crodgers.assignment.client.QueueBackedClient;
+import tnt.crodgers.assignment.client.ResourceRegistry;
 
 class RequestHandlerTest {
+	private static final int SHIPMENTS = ResourceRegistry.shared().slotOf("shipments");
+	private static final int PRICING   = ResourceRegistry.shared().slotOf("pricing");
+	private static final int TRACK     = ResourceRegistry.shared().slotOf("track");
+
+	private QueueBackedClient[] clients;
+
 	@BeforeEach
     void initService() {
         MockitoAnnotations.openMocks(this);
+        clients = RequestHandler.clients.clone();
+        RequestHandler.clients[SHIPMENTS] = mockShipmentsClient;
+        RequestHandler.clients[PRICING]   = mockPricingClient;
+        RequestHandler.clients[TRACK]     = mockTrackClient;
     }
+
+	/** The clients are static, so don't leak our mocks into other tests */
+	@AfterEach
+	void restoreClients() {
+		System.arraycopy(clients, 0, RequestHandler.clients, 0, clients.length);
+	}
 	 
 	@Mock
 	private QueueBackedClient mockTrackClient, mockShipmentsClient, mockPricingClient;
@@ -29,10 +56,6 @@ class RequestHandlerTest {
 	void testGetNoParams() {
 		final RequestHandler handler = new RequestHandler();
 		
-		setField(handler, "shipmentsClient", mockShipmentsClient);
-		setField(handler, "pricingClient", mockPricingClient);
-		setField(handler, "trackClient", mockTrackClient);
-		
 		handler.get(new HashMap<String, String>());
 		verifyNoInteractions(mockShipmentsClient);
 		verifyNoInteractions(mockPricingClient);
@@ -43,10 +66,6 @@ class RequestHandlerTest {
 	void testGetShipments() {
 		final RequestHandler handler = new RequestHandler();
 		
-		setField(handler, "shipmentsClient", mockShipmentsClient);
-		setField(handler, "pricingClient", mockPricingClient);
-		setField(handler, "trackClient", mockTrackClient);
-		
 		HashMap<String, String> params = new HashMap<String, String>();
 		String qVal = "a,b,c";
 		params.put("shipments", qVal);
@@ -60,10 +79,6 @@ class RequestHandlerTest {
 	void testGetTrack() {
 		final RequestHandler handler = new RequestHandler();
 		
-		setField(handler, "shipmentsClient", mockShipmentsClient);
-		setField(handler, "pricingClient", mockPricingClient);
-		setField(handler, "trackClient", mockTrackClient);
-		
 		HashMap<String, String> params = new HashMap<String, String>();
 		String qVal = "a,b,c";
 		params.put("track", qVal);
@@ -77,10 +92,6 @@ class RequestHandlerTest {
 	void testGetPricing() {
 		final RequestHandler handler = new RequestHandler();
 		
-		setField(handler, "shipmentsClient", mockShipmentsClient);
-		setField(handler, "pricingClient", mockPricingClient);
-		setField(handler, "trackClient", mockTrackClient);
-		
 		HashMap<String, String> params = new HashMap<String, String>();
 		String qVal = "a,b,c";
 		params.put("pricing", qVal);
@@ -94,10 +105,6 @@ class RequestHandlerTest {
 	void testGetAll() {
 		final RequestHandler handler = new RequestHandler();
 		
-		setField(handler, "shipmentsClient", mockShipmentsClient);
-		setField(handler, "pricingClient", mockPricingClient);
-		setField(handler, "trackClient", mockTrackClient);
-		
 		HashMap<String, String> params = new HashMap<String, String>();
 		String qPricing = "a,b,c";
 		params.put("pricing", qPricing);
@@ -111,4 +118,78 @@ class RequestHandlerTest {
 		verify(mockShipmentsClient, times(1)).request(eq(handler.dedup(qShipments)), any(AggregationResponse.class));
 	}
 
+	@Test
+	void testTimeout() {
+		final RequestHandler handler = new RequestHandler();
+		assertEquals(30000, handler.getTimeoutMs(MockServerRequest.builder().build()));
+		assertEquals(500, handler.getTimeoutMs(MockServerRequest.builder().queryParam("timeout", "500").build()));
+		assertEquals(250, handler.getTimeoutMs(MockServerRequest.builder()
+				.header("X-Request-Timeout", "250").queryParam("timeout", "500").build()));
+		// Callers can shorten, but not extend, the wait
+		assertEquals(30000, handler.getTimeoutMs(MockServerRequest.builder().queryParam("timeout", "60000").build()));
+		assertEquals(30000, handler.getTimeoutMs(MockServerRequest.builder().queryParam("timeout", "soon").build()));
+	}
+
+	@Test
+	void testRejectWhenTooManyPending() {
+		AdmissionControl admission = new AdmissionControl(1, 2);
+		final RequestHandler handler = new RequestHandler(admission);
+		assertTrue(admission.tryAcquire());
+
+		ServerResponse response = handler.get(MockServerRequest.builder().queryParam("shipments", "a").build()).block();
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.statusCode());
+		assertEquals("2", response.headers().getFirst(HttpHeaders.RETRY_AFTER));
+		verifyNoInteractions(mockShipmentsClient);
+		assertEquals(1, admission.getPending());
+	}
+
+	@Test
+	void testRejectWhenQueueFull() {
+		AdmissionControl admission = new AdmissionControl(10, 1);
+		final RequestHandler handler = new RequestHandler(admission);
+		when(mockPricingClient.isSaturated()).thenReturn(true);
+
+		// Only the resources a request needs are considered
+		ServerResponse response = handler.get(MockServerRequest.builder().queryParam("pricing", "a").build()).block();
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.statusCode());
+		assertEquals("1", response.headers().getFirst(HttpHeaders.RETRY_AFTER));
+		assertEquals(0, admission.getPending());
+
+		handler.get(MockServerRequest.builder().queryParam("shipments", "a").build());
+		verify(mockShipmentsClient, times(1)).request(any(), any(AggregationResponse.class));
+		assertEquals(1, admission.getPending());
+	}
+
+	@Test
+	void testReleaseWhenRequestFails() {
+		AdmissionControl admission = new AdmissionControl(10, 1);
+		final RequestHandler handler = new RequestHandler(admission);
+		doThrow(new IllegalStateException("boom")).when(mockShipmentsClient).request(any(), any(AggregationResponse.class));
+
+		assertThrows(IllegalStateException.class, () -> handler.get(MockServerRequest.builder().queryParam("shipments", "a").build()));
+		assertThrows(IllegalStateException.class, () -> handler.stream(MockServerRequest.builder().queryParam("shipments", "a").build()));
+		assertEquals(0, admission.getPending());
+	}
+
+	@Test
+	void testStream() {
+		final RequestHandler handler = new RequestHandler(new AdmissionControl(10, 1));
+		ServerResponse response = handler.stream(MockServerRequest.builder().queryParam("track", "a")
+				.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE).build()).block();
+		assertEquals(MediaType.APPLICATION_NDJSON, response.headers().getContentType());
+		verify(mockTrackClient, times(1)).request(eq(handler.dedup("a")), any(AggregationResponse.class));
+
+		response = handler.stream(MockServerRequest.builder().queryParam("track", "a")
+				.header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE).build()).block();
+		assertEquals(MediaType.TEXT_EVENT_STREAM, response.headers().getContentType());
+
+		// As matched by the route, parameters don't matter
+		response = handler.stream(MockServerRequest.builder().queryParam("track", "a")
+				.header(HttpHeaders.ACCEPT, "text/event-stream;charset=UTF-8;q=0.9, */*;q=0.1").build()).block();
+		assertEquals(MediaType.TEXT_EVENT_STREAM, response.headers().getContentType());
+
+		response = handler.stream(MockServerRequest.builder().queryParam("track", "a")
+				.header(HttpHeaders.ACCEPT, "application/x-ndjson, */*").build()).block();
+		assertEquals(MediaType.APPLICATION_NDJSON, response.headers().getContentType());
+	}
 }